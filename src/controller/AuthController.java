@@ -3,19 +3,19 @@ package controller;
 import model.User;
 import util.FileManager;
 
-import java.util.Map;
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class AuthController {
-    private Map<String, User> users;
     private User currentUser;
 
     public AuthController() {
-        // Load users from file
-        users = FileManager.loadUsers();
     }
 
     public boolean login(String email, String password) {
-        User user = users.get(email);
+        // Only this user's record is read from the user store
+        User user = FileManager.loadUser(email);
 
         if (user != null && user.getPassword().equals(password)) {
             currentUser = user;
@@ -26,19 +26,55 @@ public class AuthController {
     }
 
     public boolean register(String email, String password) {
-        // Check if user already exists
-        if (users.containsKey(email)) {
-            return false;
+        // Create and save the new user; fails if the email is already registered
+        User newUser = new User(email, password);
+        return FileManager.registerUser(newUser);
+    }
+
+    // Record a design against the logged-in user and persist just that user
+    public void addDesignId(int designId) {
+        if (currentUser != null) {
+            updateCurrentUser(user -> user.addDesignId(designId));
         }
+    }
 
-        // Create new user
-        User newUser = new User(email, password);
-        users.put(email, newUser);
+    /**
+     * Record a design against the logged-in user without blocking the event dispatch thread.
+     * Called on the EDT; the user store is written in the background and the logged-in user is
+     * updated back on the EDT once it has been.
+     */
+    public CompletableFuture<Void> addDesignIdAsync(int designId) {
+        User user = currentUser;
+        if (user == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Consumer<User> change = account -> account.addDesignId(designId);
+        String email = user.getEmail();
+        return CompletableFuture.supplyAsync(() -> FileManager.updateUser(email, change))
+                .thenAcceptAsync(updated -> applyUpdate(user, updated, change), SwingUtilities::invokeLater);
+    }
 
-        // Save users
-        FileManager.saveUsers(users);
+    public void removeDesignId(int designId) {
+        if (currentUser != null) {
+            updateCurrentUser(user -> user.removeDesignId(designId));
+        }
+    }
+
+    // Apply the change to the stored account, which may have been changed by another instance
+    private void updateCurrentUser(Consumer<User> change) {
+        applyUpdate(currentUser, FileManager.updateUser(currentUser.getEmail(), change), change);
+    }
 
-        return true;
+    // Take on the stored account, unless another user has logged in since the change was made
+    private void applyUpdate(User user, User updated, Consumer<User> change) {
+        if (currentUser != user) {
+            return;
+        }
+        if (updated != null) {
+            currentUser = updated;
+        } else {
+            change.accept(currentUser);
+        }
     }
 
     public void logout() {
@@ -1,16 +1,19 @@
 package controller;
 
 import model.Design;
+import model.DesignSummary;
 import model.User;
-import util.FileManager;
+import util.DesignRepository;
 
 import java.util.List;
 
 public class DashboardController {
     private AuthController authController;
+    private DesignRepository designRepository;
 
-    public DashboardController(AuthController authController) {
+    public DashboardController(AuthController authController, DesignRepository designRepository) {
         this.authController = authController;
+        this.designRepository = designRepository;
     }
 
     public List<Design> getUserDesigns() {
@@ -19,17 +22,24 @@ public class DashboardController {
             return List.of(); // Empty list if no user is logged in
         }
 
-        return FileManager.getUserDesigns(currentUser.getEmail());
+        return designRepository.findByOwner(currentUser.getEmail());
+    }
+
+    // Lightweight listing for the dashboard; open a design with loadDesign
+    public List<DesignSummary> getUserDesignSummaries() {
+        User currentUser = authController.getCurrentUser();
+        if (currentUser == null) {
+            return List.of();
+        }
+
+        return designRepository.findSummariesByOwner(currentUser.getEmail());
     }
 
     public void deleteDesign(int designId) {
-        FileManager.deleteDesign(designId);
+        designRepository.delete(designId);
 
         // Update user's design list
-        User currentUser = authController.getCurrentUser();
-        if (currentUser != null) {
-            currentUser.removeDesignId(designId);
-        }
+        authController.removeDesignId(designId);
     }
 
     public void createNewDesign() {
@@ -37,14 +47,6 @@ public class DashboardController {
     }
 
     public Design loadDesign(int designId) {
-        List<Design> designs = FileManager.loadDesigns();
-
-        for (Design design : designs) {
-            if (design.getId() == designId) {
-                return design;
-            }
-        }
-
-        return null;
+        return designRepository.findById(designId);
     }
 }
\ No newline at end of file
@@ -1,37 +1,64 @@
 package controller;
 
 import model.Design;
+import model.DesignRevision;
 import model.Furniture;
 import model.Room;
 import model.User;
+import util.DesignRepository;
+import util.Constants;
 import util.FileManager;
-
+import util.geometry.Footprint;
+import util.geometry.FurnitureIndex;
+import util.geometry.Overlap;
+import util.geometry.Snap;
+import util.geometry.SnapIndex;
+import util.storage.DesignWriteQueue;
+
+import javax.swing.SwingUtilities;
 import java.awt.Point;
 import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
 import java.util.Stack;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class Design2DController {
     private AuthController authController;
     private FurnitureController furnitureController;
+    private DesignRepository designRepository;
     private Design currentDesign;
     private boolean designChanged = false;
     private boolean isNewUnsavedDesign = false;
 
+    // Completes once a new design has its permanent id and is recorded against the user
+    private CompletableFuture<Void> newDesignRegistration = CompletableFuture.completedFuture(null);
+
     // For undo/redo functionality
     private Stack<List<Furniture>> undoStack;
     private Stack<List<Furniture>> redoStack;
 
-    public Design2DController(AuthController authController, FurnitureController furnitureController) {
+    // Where the current design's furniture lies on the 2D canvas, for hit tests and culling; one cell per meter
+    private final FurnitureIndex furnitureIndex =
+            new FurnitureIndex(Constants.PIXELS_PER_METER, Constants.PIXELS_PER_METER);
+
+    // Walls and furniture edges and centres of the current design, for snapping dragged furniture
+    private final SnapIndex snapIndex = new SnapIndex(Constants.PIXELS_PER_METER);
+
+    public Design2DController(AuthController authController, FurnitureController furnitureController,
+                              DesignRepository designRepository) {
         this.authController = authController;
         this.furnitureController = furnitureController;
+        this.designRepository = designRepository;
         this.undoStack = new Stack<>();
         this.redoStack = new Stack<>();
     }
 
     public void setCurrentDesign(Design design) {
         this.currentDesign = design;
+        rebuildIndexes();
         // Clear undo/redo stacks when setting a new design
         undoStack.clear();
         redoStack.clear();
@@ -41,6 +68,7 @@ public class Design2DController {
         this.designChanged = false;
         // Reset the new unsaved design flag if we're loading an existing design
         this.isNewUnsavedDesign = (design.getId() == 0);
+        this.newDesignRegistration = CompletableFuture.completedFuture(null);
     }
 
     public Design getCurrentDesign() {
@@ -58,13 +86,14 @@ public class Design2DController {
         }
 
         // Create a new design with a default name
-        String designName = "Design " + (FileManager.loadDesigns().size() + 1);
+        String designName = "Design " + (designRepository.count() + 1);
 
         // Create design but don't save it yet - temporary ID of 0
         Design design = new Design(0, designName, currentUser.getEmail(), room);
 
         // Set as current design
         currentDesign = design;
+        rebuildIndexes();
 
         // Initialize undo/redo stacks
         undoStack.clear();
@@ -73,6 +102,7 @@ public class Design2DController {
         // Mark design as changed and new unsaved design
         this.designChanged = true;
         this.isNewUnsavedDesign = true;
+        this.newDesignRegistration = CompletableFuture.completedFuture(null);
 
         return design;
     }
@@ -109,6 +139,8 @@ public class Design2DController {
 
         // Add to the design
         currentDesign.addFurniture(newFurniture);
+        furnitureIndex.add(newFurniture);
+        snapIndex.add(newFurniture);
 
         // Save the state for undo
         saveState();
@@ -123,6 +155,8 @@ public class Design2DController {
         }
 
         currentDesign.removeFurniture(furniture);
+        furnitureIndex.remove(furniture);
+        snapIndex.remove(furniture);
 
         saveState();
     }
@@ -133,6 +167,8 @@ public class Design2DController {
         }
 
         furniture.setPosition(newPosition);
+        furnitureIndex.update(furniture);
+        snapIndex.update(furniture);
 
         // We don't save state on every move as it would create too many undo steps
         // Instead, we'll save state when mouse is released
@@ -151,50 +187,156 @@ public class Design2DController {
         saveState();
     }
 
+    // The topmost furniture under a point of the 2D canvas, rotation included; null if there is none
+    public Furniture findFurnitureAt(double x, double y) {
+        if (currentDesign == null) {
+            return null;
+        }
+        refreshFurnitureIndex();
+        return furnitureIndex.findAt(x, y);
+    }
+
+    // Furniture that may show in an area of the 2D canvas, in drawing order
+    public List<Furniture> findFurnitureIn(Rectangle2D area) {
+        if (currentDesign == null) {
+            return new ArrayList<>();
+        }
+        refreshFurnitureIndex();
+        return furnitureIndex.findIn(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+    }
+
+    // Furniture the piece would overlap if it were at the position, rotation included
+    public List<Furniture> findOverlapping(Furniture furniture, Point position) {
+        if (currentDesign == null) {
+            return new ArrayList<>();
+        }
+        refreshFurnitureIndex();
+        return furnitureIndex.findOverlapping(furniture,
+                Footprint.of(furniture, position, Constants.PIXELS_PER_METER));
+    }
+
+    // Every pair of overlapping furniture in a design, such as one about to be saved
+    public List<Overlap> findOverlaps(Design design) {
+        if (design == null) {
+            return new ArrayList<>();
+        }
+        if (design == currentDesign) {
+            refreshFurnitureIndex();
+            return furnitureIndex.findAllOverlaps();
+        }
+        FurnitureIndex index = new FurnitureIndex(Constants.PIXELS_PER_METER, Constants.PIXELS_PER_METER);
+        index.rebuild(design.getFurnitureList());
+        return index.findAllOverlaps();
+    }
+
     /**
-     * Explicitly save the current design to the file system.
-     * This should be called when the user chooses to save the design.
+     * How far to move a piece dragged to the position so that it lines up with a wall or with the
+     * edge or centre of other furniture within the tolerance, or otherwise sits on the grid.
+     * Tolerance and grid size are in canvas units; a grid size of 0 turns grid snapping off.
      */
-    public Design saveDesign() {
-        if (currentDesign != null) {
-            User currentUser = authController.getCurrentUser();
+    public Snap snapFurniture(Furniture furniture, Point position, double tolerance, int gridSize) {
+        if (currentDesign == null) {
+            return new Snap(0, 0, Double.NaN, Double.NaN);
+        }
+        refreshFurnitureIndex();
+        Room room = currentDesign.getRoom();
+        snapIndex.setWalls(room.getWidth() * Constants.PIXELS_PER_METER, room.getLength() * Constants.PIXELS_PER_METER);
+        return snapIndex.snap(furniture, Footprint.of(furniture, position, Constants.PIXELS_PER_METER),
+                tolerance, gridSize);
+    }
 
-            if (isNewUnsavedDesign) {
+    // The view's undo and redo replace the furniture list without going through this controller
+    private void refreshFurnitureIndex() {
+        if (!furnitureIndex.isIndexing(currentDesign.getFurnitureList())
+                || !snapIndex.isIndexing(currentDesign.getFurnitureList())) {
+            rebuildIndexes();
+        }
+    }
 
-                // Create a clean copy of the design to save
-                Design designToSave = new Design(
-                        0,
-                        currentDesign.getName(),
-                        currentDesign.getUserEmail(),
-                        currentDesign.getRoom()
-                );
+    private void rebuildIndexes() {
+        furnitureIndex.rebuild(currentDesign.getFurnitureList());
+        snapIndex.rebuild(currentDesign.getFurnitureList());
+    }
 
-                // Copy the furniture list (deep copy to prevent reference issues)
-                for (Furniture furniture : currentDesign.getFurnitureList()) {
-                    designToSave.addFurniture(furniture.clone());
-                }
+    // Saved revisions of the current design, oldest first
+    public List<DesignRevision> getRevisions() {
+        if (currentDesign == null || isNewUnsavedDesign) {
+            return new ArrayList<>();
+        }
+        return designRepository.findRevisions(currentDesign.getId());
+    }
 
-                // Save the design
-                FileManager.addDesign(designToSave);
+    /**
+     * Bring back the contents of an earlier revision as an undoable change.
+     * Saving afterwards stores them as a new revision; the revisions in between are kept.
+     */
+    public boolean restoreRevision(int revision) {
+        if (currentDesign == null || isNewUnsavedDesign) {
+            return false;
+        }
+        Design restored = designRepository.findRevision(currentDesign.getId(), revision);
+        if (restored == null) {
+            return false;
+        }
 
-                // Update the current design with the ID that was assigned
-                currentDesign.setId(designToSave.getId());
+        currentDesign.setName(restored.getName());
+        currentDesign.setRoom(restored.getRoom());
+        currentDesign.setFurnitureList(restored.getFurnitureList());
+        rebuildIndexes();
+        saveState();
+        return true;
+    }
 
-                // Add design to user's list only on first save
-                if (currentUser != null) {
-                    currentUser.addDesignId(currentDesign.getId());
-                }
+    /**
+     * Explicitly save the current design to the file system.
+     * This should be called when the user chooses to save the design.
+     * The write happens on a background thread; the returned future completes once it is on disk.
+     * Called on the event dispatch thread, which the first save of a new design also returns to
+     * once its id is claimed, so the design is only ever changed there.
+     */
+    public CompletableFuture<Design> saveDesign() {
+        if (currentDesign == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Design design = currentDesign;
+
+        if (isNewUnsavedDesign) {
+            isNewUnsavedDesign = false;
+            // Claiming an id and adding it to the user's list both go to disk, so they run in the background;
+            // the design and the user are only changed once each step is back on the EDT
+            newDesignRegistration = CompletableFuture.supplyAsync(FileManager::reserveDesignId)
+                    .thenComposeAsync(designId -> {
+                        if (designId < 0) {
+                            return CompletableFuture.<Void>failedFuture(
+                                    new IOException("Cannot allocate an id for the design"));
+                        }
+                        // Assign the permanent ID now so further saves update the same design
+                        design.setId(designId);
+                        return authController.addDesignIdAsync(designId);
+                    }, SwingUtilities::invokeLater)
+                    .whenCompleteAsync((ignored, error) -> {
+                        // Try again on the next save
+                        if (error != null && currentDesign == design) {
+                            isNewUnsavedDesign = true;
+                        }
+                    }, SwingUtilities::invokeLater);
+        }
 
-                isNewUnsavedDesign = false;
-            } else {
-                // This is an existing design being updated
-                FileManager.updateDesign(currentDesign);
-            }
+        // Reset the design changed flag
+        this.designChanged = false;
 
-            // Reset the design changed flag
-            this.designChanged = false;
+        CompletableFuture<Design> saved;
+        if (newDesignRegistration.isDone() && !newDesignRegistration.isCompletedExceptionally()) {
+            // The write queue snapshots the design, so edits made after this call are not included
+            saved = designRepository.save(design);
+        } else {
+            saved = newDesignRegistration.thenComposeAsync(ignored -> designRepository.save(design),
+                    SwingUtilities::invokeLater);
         }
-
-        return currentDesign;
+        // The writer thread leaves the design alone; its new version is taken on here
+        return saved.thenApplyAsync(stored -> {
+            DesignWriteQueue.copyStoredVersion(stored, design);
+            return stored;
+        }, SwingUtilities::invokeLater);
     }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import javafx.scene.transform.Rotate;
 import model.Design;
 import model.Furniture;
 import model.Room;
+import util.Constants;
 import java.awt.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -299,8 +300,8 @@ public class Design3DController {
             }
 
             // Convert from pixel position to 3D coordinate system
-            double x = (pos.getX() / 100.0) * 100 - (roomWidth / 2);
-            double z = (pos.getY() / 100.0) * 100 - (roomLength / 2);
+            double x = (pos.getX() / Constants.PIXELS_PER_METER) * 100 - (roomWidth / 2);
+            double z = (pos.getY() / Constants.PIXELS_PER_METER) * 100 - (roomLength / 2);
             double y = (room.getHeight() * 100 / 2) - (h / 2); // Place on floor
 
             System.out.println("Adding 3D furniture: " + furniture.getType() +
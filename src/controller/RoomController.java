@@ -3,13 +3,15 @@ package controller;
 import model.Room;
 import model.Design;
 import model.User;
-import util.FileManager;
+import util.DesignRepository;
 
 public class RoomController {
     private AuthController authController;
+    private DesignRepository designRepository;
 
-    public RoomController(AuthController authController) {
+    public RoomController(AuthController authController, DesignRepository designRepository) {
         this.authController = authController;
+        this.designRepository = designRepository;
     }
 
     public Design createDesign(String name, Room room) {
@@ -21,11 +23,13 @@ public class RoomController {
         // Create new design with the room
         Design design = new Design(0, name, currentUser.getEmail(), room);
 
-        // Save the design
-        FileManager.addDesign(design);
+        // Save the design; without a stored id it cannot be added to the user's list
+        if (!designRepository.add(design)) {
+            return null;
+        }
 
         // Add design to user's list
-        currentUser.addDesignId(design.getId());
+        authController.addDesignId(design.getId());
 
         return design;
     }
@@ -36,7 +40,6 @@ public class RoomController {
         }
 
         design.setRoom(room);
-        FileManager.updateDesign(design);
-        return true;
+        return designRepository.update(design);
     }
 }
\ No newline at end of file
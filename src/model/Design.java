@@ -15,6 +15,7 @@ public class Design implements Serializable {
     private String userEmail; // Store the email of the user who created this design
     private Room room;
     private List<Furniture> furnitureList;
+    private int version; // Number of times this design has been saved; used to detect conflicting saves
 
     public Design(int id, String name, String userEmail, Room room) {
         this.id = id;
@@ -95,6 +96,14 @@ public class Design implements Serializable {
         this.room = room;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public List<Furniture> getFurnitureList() {
         return furnitureList;
     }
@@ -0,0 +1,56 @@
+package model;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+// One saved revision of a design, as listed in its history
+public class DesignRevision implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int designId;
+    private int revision;
+    private Date savedAt;
+    private String name;
+    private int furnitureCount;
+
+    public DesignRevision(int designId, int revision, Date savedAt, String name, int furnitureCount) {
+        this.designId = designId;
+        this.revision = revision;
+        this.savedAt = savedAt;
+        this.name = name;
+        this.furnitureCount = furnitureCount;
+    }
+
+    // Formatted save time for display
+    public String getFormattedDate() {
+        SimpleDateFormat sdf = new SimpleDateFormat("dd, MMM yyyy HH:mm");
+        return sdf.format(savedAt);
+    }
+
+    // Getters
+    public int getDesignId() {
+        return designId;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public Date getSavedAt() {
+        return savedAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFurnitureCount() {
+        return furnitureCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Revision " + revision + " of design " + designId + "\nSaved: " + getFormattedDate();
+    }
+}
\ No newline at end of file
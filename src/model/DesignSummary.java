@@ -0,0 +1,67 @@
+package model;
+
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+// What the dashboard shows for a saved design, read without loading its furniture
+public class DesignSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int id;
+    private String name;
+    private Date creationDate;
+    private String userEmail;
+    private Room room;
+    private int furnitureCount;
+
+    public DesignSummary(int id, String name, String userEmail, Date creationDate, Room room, int furnitureCount) {
+        this.id = id;
+        this.name = name;
+        this.userEmail = userEmail;
+        this.creationDate = creationDate;
+        this.room = room;
+        this.furnitureCount = furnitureCount;
+    }
+
+    public static DesignSummary of(Design design) {
+        return new DesignSummary(design.getId(), design.getName(), design.getUserEmail(),
+                design.getCreationDate(), design.getRoom(), design.getFurnitureList().size());
+    }
+
+    // Formatted date for display
+    public String getFormattedDate() {
+        SimpleDateFormat sdf = new SimpleDateFormat("dd, MMM yyyy");
+        return sdf.format(creationDate);
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+
+    public int getFurnitureCount() {
+        return furnitureCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Design " + id + "\nRoom: " + room + "\nCreated: " + getFormattedDate();
+    }
+}
\ No newline at end of file
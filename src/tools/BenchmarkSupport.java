@@ -0,0 +1,55 @@
+package tools;
+
+import model.Furniture;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Furniture generation, checking and timing report shared by the floor plan benchmarks.
+ */
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Furniture of random type and size from 0.4 to 2 m a side, placed anywhere on a square floor.
+     * When squareToWalls is set, half of the pieces are turned by a multiple of 90 degrees, as
+     * furniture usually is, so edge-to-edge cases come up; the rest are at any angle.
+     */
+    static List<Furniture> randomFurniture(int count, int floorPixels, boolean squareToWalls, Random random) {
+        Furniture.Type[] types = Furniture.Type.values();
+        List<Furniture> furnitureList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Furniture furniture = new Furniture(i + 1, types[random.nextInt(types.length)],
+                    0.4 + random.nextDouble() * 1.6, 0.4 + random.nextDouble() * 1.6, 1.0);
+            furniture.setPosition(new Point(random.nextInt(floorPixels), random.nextInt(floorPixels)));
+            furniture.setRotation(squareToWalls && random.nextBoolean() ? random.nextInt(4) * 90 : random.nextInt(360));
+            furnitureList.add(furniture);
+        }
+        return furnitureList;
+    }
+
+    // Run every query once, which also warms up the code under test; returns how many the check failed for
+    static int countMismatches(int queries, IntPredicate agrees) {
+        int mismatches = 0;
+        for (int i = 0; i < queries; i++) {
+            if (!agrees.test(i)) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    static void report(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s mean %8.2f us  p50 %8.2f us  p99 %8.2f us  max %8.2f us%n", label,
+                Arrays.stream(sorted).average().orElse(0) / 1e3, sorted[sorted.length / 2] / 1e3,
+                sorted[sorted.length * 99 / 100] / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+}
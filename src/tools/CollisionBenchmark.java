@@ -0,0 +1,133 @@
+package tools;
+
+import model.Furniture;
+import util.geometry.Footprint;
+import util.geometry.FurnitureIndex;
+import util.geometry.Overlap;
+
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times the overlap checks made while dragging furniture, and the query for every overlapping
+ * pair in a design, on a room crowded with randomly placed and rotated furniture. Checks the
+ * separating-axis test against java.awt.geom.Area intersections, and the pair query against
+ * testing every pair.
+ * Usage: java tools.CollisionBenchmark [furniture] [roomMeters]
+ */
+public class CollisionBenchmark {
+    private static final int PIXELS_PER_METER = 100;
+    private static final int CELL_SIZE = 100;
+    private static final int QUERIES = 20000;
+    private static final int AREA_CHECKS = 20000;
+    private static final int ALL_PAIRS_RUNS = 50;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+        int roomMeters = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int roomPixels = roomMeters * PIXELS_PER_METER;
+
+        Random random = new Random(42);
+        List<Furniture> furnitureList = BenchmarkSupport.randomFurniture(count, roomPixels, true, random);
+        FurnitureIndex index = new FurnitureIndex(PIXELS_PER_METER, CELL_SIZE);
+        index.rebuild(furnitureList);
+        System.out.printf("Furniture: %d in a %d x %d m room%n", count, roomMeters, roomMeters);
+
+        // The separating-axis test must agree with the exact area of intersection
+        int areaMismatches = BenchmarkSupport.countMismatches(AREA_CHECKS, i -> {
+            Furniture first = furnitureList.get(random.nextInt(count));
+            Furniture second = furnitureList.get(random.nextInt(count));
+            Point nearby = new Point(first.getPosition().x + random.nextInt(201) - 100,
+                    first.getPosition().y + random.nextInt(201) - 100);
+            Footprint moved = Footprint.of(second, nearby, PIXELS_PER_METER);
+            Area shared = area(first, first.getPosition());
+            shared.intersect(area(second, nearby));
+            Rectangle2D sharedBounds = shared.getBounds2D();
+            boolean overlapping = !shared.isEmpty() && sharedBounds.getWidth() > 1e-3 && sharedBounds.getHeight() > 1e-3;
+            return Footprint.of(first, PIXELS_PER_METER).overlaps(moved) == overlapping;
+        });
+
+        // One drag step: the piece at a position a few pixels away, as the view checks it
+        long[] steps = new long[QUERIES];
+        int blocked = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            Furniture furniture = furnitureList.get(random.nextInt(count));
+            Point target = new Point(furniture.getPosition().x + random.nextInt(21) - 10,
+                    furniture.getPosition().y + random.nextInt(21) - 10);
+            long begin = System.nanoTime();
+            boolean collides = !index.findOverlapping(furniture,
+                    Footprint.of(furniture, target, PIXELS_PER_METER)).isEmpty();
+            steps[i] = System.nanoTime() - begin;
+            if (collides) {
+                blocked++;
+            }
+        }
+
+        Set<String> expected = allPairs(furnitureList);
+        List<Overlap> overlaps = index.findAllOverlaps();
+        Set<String> found = new HashSet<>();
+        for (Overlap overlap : overlaps) {
+            found.add(pair(overlap.getFirst(), overlap.getSecond()));
+        }
+        long[] allPairRuns = new long[ALL_PAIRS_RUNS];
+        for (int i = 0; i < ALL_PAIRS_RUNS; i++) {
+            long begin = System.nanoTime();
+            index.findAllOverlaps();
+            allPairRuns[i] = System.nanoTime() - begin;
+        }
+        long[] scanRuns = new long[Math.max(1, ALL_PAIRS_RUNS / 10)];
+        for (int i = 0; i < scanRuns.length; i++) {
+            long begin = System.nanoTime();
+            allPairs(furnitureList);
+            scanRuns[i] = System.nanoTime() - begin;
+        }
+
+        BenchmarkSupport.report("Drag step", steps);
+        BenchmarkSupport.report("All overlaps", allPairRuns);
+        BenchmarkSupport.report("Every pair", scanRuns);
+        boolean pairsAgree = found.equals(expected) && overlaps.size() == expected.size();
+        System.out.println("Steps onto other furniture: " + blocked + "/" + QUERIES
+                + ", overlapping pairs: " + expected.size()
+                + ", grid and every-pair results " + (pairsAgree ? "agree" : "DISAGREE")
+                + ", separating-axis and area tests disagree on " + areaMismatches + "/" + AREA_CHECKS);
+        if (!pairsAgree || areaMismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Set<String> allPairs(List<Furniture> furnitureList) {
+        List<Footprint> footprints = new ArrayList<>(furnitureList.size());
+        for (Furniture furniture : furnitureList) {
+            footprints.add(Footprint.of(furniture, PIXELS_PER_METER));
+        }
+        Set<String> pairs = new HashSet<>();
+        for (int i = 0; i < footprints.size(); i++) {
+            for (int j = i + 1; j < footprints.size(); j++) {
+                if (footprints.get(i).overlaps(footprints.get(j))) {
+                    pairs.add(pair(furnitureList.get(i), furnitureList.get(j)));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static String pair(Furniture first, Furniture second) {
+        return first.getId() + "-" + second.getId();
+    }
+
+    // The furniture's rectangle rotated the way Design2DView draws it
+    private static Area area(Furniture furniture, Point position) {
+        int width = (int) (furniture.getWidth() * PIXELS_PER_METER);
+        int height = (int) (furniture.getLength() * PIXELS_PER_METER);
+        AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(furniture.getRotation()),
+                position.x + width / 2, position.y + height / 2);
+        return new Area(rotation.createTransformedShape(new Rectangle2D.Double(position.x, position.y, width, height)));
+    }
+}
@@ -0,0 +1,61 @@
+package tools;
+
+import util.FileManager;
+
+import java.io.File;
+
+/**
+ * Exports designs from the data/ directory into a zip archive, or imports an archive into it.
+ * Designs are streamed one at a time in both directions, so memory use stays flat however
+ * many designs the archive holds. Run it from the application directory, with the same
+ * -Droomdesigner.storage setting as the application.
+ * Usage: java tools.DesignArchiveTool export archive.zip [--user email | --ids from-to]
+ *        java tools.DesignArchiveTool import archive.zip [threads]
+ */
+public class DesignArchiveTool {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        File archive = new File(args[1]);
+        long started = System.nanoTime();
+
+        int count;
+        if (args[0].equals("export")) {
+            if (args.length == 4 && args[2].equals("--user")) {
+                count = FileManager.exportDesigns(archive, args[3]);
+            } else if (args.length == 4 && args[2].equals("--ids")) {
+                String[] range = args[3].split("-");
+                count = FileManager.exportDesigns(archive, Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+            } else if (args.length == 2) {
+                count = FileManager.exportDesigns(archive, 1, Integer.MAX_VALUE);
+            } else {
+                usage();
+                return;
+            }
+        } else if (args[0].equals("import")) {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            count = FileManager.importDesigns(archive, threads);
+        } else {
+            usage();
+            return;
+        }
+        FileManager.closeDesignStore();
+
+        if (count < 0) {
+            System.exit(1);
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%sed %d designs %s %s in %.1f s (%.0f designs/s, heap in use %d MB)%n",
+                args[0].equals("export") ? "Export" : "Import", count,
+                args[0].equals("export") ? "to" : "from", archive, seconds, count / seconds,
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java tools.DesignArchiveTool export archive.zip [--user email | --ids from-to]");
+        System.out.println("       java tools.DesignArchiveTool import archive.zip [threads]");
+    }
+}
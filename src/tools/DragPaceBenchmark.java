@@ -0,0 +1,191 @@
+package tools;
+
+import controller.Design2DController;
+import model.Design;
+import model.Furniture;
+import model.Room;
+import util.Constants;
+import util.geometry.Footprint;
+import util.geometry.Snap;
+import view.components.DragPacer;
+import view.components.LabelCache;
+import view.components.RoomLayers;
+import view.components.Viewport;
+
+import javax.swing.SwingUtilities;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how much event dispatch thread time a furniture drag takes with a high-rate mouse,
+ * applying every motion event as it arrives against pacing them with DragPacer. Motion events
+ * are posted to the EDT at the given rate; each drag step snaps and moves the piece, checks it
+ * for overlaps and paints the dirty area from the room's cached layers, as the 2D view does.
+ * Reports drag steps (one model update and one repaint each) and EDT busy time per second.
+ * Each mode runs twice and the second run is reported, after the first has warmed up.
+ * Usage: java tools.DragPaceBenchmark [furniture] [eventsPerSecond] [seconds]
+ */
+public class DragPaceBenchmark {
+    private static final int PIXELS_PER_METER = Constants.PIXELS_PER_METER;
+    private static final int ROOM_METERS = 40;
+    private static final int SCREEN_WIDTH = 1600;
+    private static final int SCREEN_HEIGHT = 1000;
+    private static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+
+    // Settings the 2D view drags with
+    private static final double SNAP_DISTANCE = 8;
+    private static final int GRID_SIZE = 10;
+
+    private final Design2DController controller = new Design2DController(null, null, null);
+    private final LabelCache labelCache = new LabelCache(LABEL_FONT, 64);
+    private final RoomLayers roomLayers = new RoomLayers(this::drawFurniture, controller::findFurnitureIn);
+    private final Viewport viewport = new Viewport();
+    private final BufferedImage screen = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    private final Rectangle visible = new Rectangle(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+    private final Room room;
+    private final Design design;
+    private final Furniture dragged;
+
+    // Only touched on the EDT
+    private long busyNanos;
+    private int steps;
+    private int events;
+
+    private DragPaceBenchmark(int count) {
+        room = new Room(ROOM_METERS, ROOM_METERS, 3, Room.Shape.RECTANGLE, Color.LIGHT_GRAY, Color.DARK_GRAY);
+        design = new Design(1, "Drag benchmark", "benchmark@example.com", room);
+        Random random = new Random(42);
+        // Kept clear of the far walls, so every piece lies fully inside the room
+        int placementPixels = ROOM_METERS * PIXELS_PER_METER - 200;
+        for (Furniture furniture : BenchmarkSupport.randomFurniture(count, placementPixels, true, random)) {
+            furniture.setColor(new Color(random.nextInt(0xFFFFFF)));
+            design.addFurniture(furniture);
+        }
+        controller.setCurrentDesign(design);
+        // The viewport stays at 100%, showing the top-left corner of the room with labels drawn
+        dragged = design.getFurnitureList().get(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        DragPaceBenchmark benchmark = new DragPaceBenchmark(count);
+        System.out.printf("Furniture: %d in a %d x %d m room, %d motion events/s for %d s per run%n",
+                count, ROOM_METERS, ROOM_METERS, rate, seconds);
+        for (int run = 0; run < 2; run++) {
+            boolean report = run == 1;
+            benchmark.run("Per event", false, rate, seconds, report);
+            benchmark.run("Paced", true, rate, seconds, report);
+        }
+        System.exit(0);
+    }
+
+    private void run(String label, boolean paced, int rate, int seconds, boolean report) throws Exception {
+        // Paced steps run from the pacer's timer rather than a motion event, so they are timed here
+        DragPacer pacer = new DragPacer((x, y) -> {
+            long begin = System.nanoTime();
+            dragTo(x, y);
+            busyNanos += System.nanoTime() - begin;
+        });
+        SwingUtilities.invokeAndWait(() -> {
+            busyNanos = 0;
+            steps = 0;
+            events = 0;
+            Graphics2D g2d = screen.createGraphics();
+            roomLayers.paint(g2d, visible, viewport, room, design.getFurnitureList(), dragged);
+            g2d.dispose();
+        });
+
+        // The mouse moves diagonally across the screen, wrapping at the edges, one motion event per period
+        ScheduledExecutorService mouse = Executors.newSingleThreadScheduledExecutor();
+        long started = System.nanoTime();
+        ScheduledFuture<?> motion = mouse.scheduleAtFixedRate(() -> SwingUtilities.invokeLater(() -> {
+            events++;
+            int x = 100 + (events * 3) % (SCREEN_WIDTH - 200);
+            int y = 100 + (events * 2) % (SCREEN_HEIGHT - 200);
+            long begin = System.nanoTime();
+            if (paced) {
+                pacer.offer(x, y);
+            } else {
+                dragTo(x, y);
+            }
+            busyNanos += System.nanoTime() - begin;
+        }), 0, 1_000_000L / rate, TimeUnit.MICROSECONDS);
+
+        Thread.sleep(seconds * 1000L);
+        motion.cancel(false);
+        mouse.shutdown();
+        mouse.awaitTermination(1, TimeUnit.SECONDS);
+        SwingUtilities.invokeAndWait(pacer::finish);
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        if (report) {
+            System.out.printf("%-10s %6d events  %6d drag steps (%4.0f/s)  EDT busy %6.1f ms/s (%4.1f%%)%n",
+                    label, events, steps, steps / elapsed, busyNanos / 1e6 / elapsed, busyNanos / 1e7 / elapsed);
+        }
+    }
+
+    // The 2D view's drag step: snap, move, overlap check and a repaint of where the piece was and is
+    private void dragTo(int x, int y) {
+        Point newPoint = new Point((int) Math.round(viewport.toCanvasX(x)), (int) Math.round(viewport.toCanvasY(y)));
+        Snap snap = controller.snapFurniture(dragged, newPoint, SNAP_DISTANCE / viewport.getZoom(), GRID_SIZE);
+        newPoint.translate((int) Math.round(snap.getOffsetX()), (int) Math.round(snap.getOffsetY()));
+        if (newPoint.equals(dragged.getPosition())) {
+            return;
+        }
+
+        Graphics2D g2d = screen.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle dirty = paintedBounds(g2d, dragged);
+        controller.moveFurniture(dragged, newPoint);
+        dirty.add(paintedBounds(g2d, dragged));
+        controller.findOverlapping(dragged, newPoint);
+
+        g2d.setClip(viewport.toScreen(dirty));
+        roomLayers.paint(g2d, visible, viewport, room, design.getFurnitureList(), dragged);
+        Graphics2D moving = (Graphics2D) g2d.create();
+        viewport.apply(moving);
+        drawFurniture(moving, dragged, viewport.getZoom() >= RoomLayers.DETAIL_ZOOM);
+        moving.dispose();
+        g2d.dispose();
+        steps++;
+    }
+
+    private void drawFurniture(Graphics2D g2d, Furniture furniture, boolean detailed) {
+        AffineTransform oldTransform = g2d.getTransform();
+        int width = (int) (furniture.getWidth() * PIXELS_PER_METER);
+        int height = (int) (furniture.getLength() * PIXELS_PER_METER);
+        Point position = furniture.getPosition();
+        LabelCache.Label label = detailed ? labelCache.get(g2d, furniture.getType().name()) : null;
+
+        g2d.rotate(Math.toRadians(furniture.getRotation()), position.x + width / 2, position.y + height / 2);
+        g2d.setColor(furniture.getColor());
+        g2d.fillRect(position.x, position.y, width, height);
+        if (detailed) {
+            g2d.setColor(Color.BLACK);
+            g2d.drawRect(position.x, position.y, width, height);
+            g2d.setColor(Color.WHITE);
+            g2d.drawGlyphVector(label.getGlyphs(), position.x + (width - label.getWidth()) / 2,
+                    position.y + (height + label.getHeight()) / 2 - 5);
+        }
+        g2d.setTransform(oldTransform);
+    }
+
+    private Rectangle paintedBounds(Graphics2D g2d, Furniture furniture) {
+        Rectangle bounds = Footprint.of(furniture, PIXELS_PER_METER).getBounds();
+        LabelCache.Label label = labelCache.get(g2d, furniture.getType().name());
+        int labelReach = (int) Math.ceil(Math.hypot(label.getWidth(), label.getHeight()) / 2);
+        bounds.add(new Rectangle((int) bounds.getCenterX() - labelReach, (int) bounds.getCenterY() - labelReach,
+                2 * labelReach, 2 * labelReach));
+        bounds.grow(6, 6);
+        return bounds;
+    }
+}
@@ -0,0 +1,88 @@
+package tools;
+
+import model.Furniture;
+import util.geometry.Footprint;
+import util.geometry.FurnitureIndex;
+
+import java.awt.Point;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times furniture hit tests in the 2D view's spatial index against a scan of every piece, on a
+ * large floor with randomly placed and rotated furniture, and checks that both find the same
+ * piece for every point. Also times moving a piece, which re-enters it in the index.
+ * Usage: java tools.HitTestBenchmark [furniture] [floorMeters]
+ */
+public class HitTestBenchmark {
+    private static final int PIXELS_PER_METER = 100;
+    private static final int CELL_SIZE = 100;
+    private static final int QUERIES = 20000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int floorMeters = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int floorPixels = floorMeters * PIXELS_PER_METER;
+
+        Random random = new Random(42);
+        List<Furniture> furnitureList = BenchmarkSupport.randomFurniture(count, floorPixels, false, random);
+
+        FurnitureIndex index = new FurnitureIndex(PIXELS_PER_METER, CELL_SIZE);
+        long start = System.nanoTime();
+        index.rebuild(furnitureList);
+        System.out.printf("Furniture: %d on a %d x %d m floor, index built in %.1f ms%n",
+                count, floorMeters, floorMeters, (System.nanoTime() - start) / 1e6);
+
+        double[][] points = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            points[i] = new double[]{random.nextInt(floorPixels) + 0.5, random.nextInt(floorPixels) + 0.5};
+        }
+
+        // Warm up, and check the index against the scan
+        int mismatches = BenchmarkSupport.countMismatches(QUERIES,
+                i -> index.findAt(points[i][0], points[i][1]) == scan(furnitureList, points[i][0], points[i][1]));
+
+        long[] indexed = new long[QUERIES];
+        long[] scanned = new long[QUERIES];
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            long begin = System.nanoTime();
+            Furniture found = index.findAt(points[i][0], points[i][1]);
+            indexed[i] = System.nanoTime() - begin;
+            if (found != null) {
+                hits++;
+            }
+            begin = System.nanoTime();
+            scan(furnitureList, points[i][0], points[i][1]);
+            scanned[i] = System.nanoTime() - begin;
+        }
+
+        long[] moves = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Furniture furniture = furnitureList.get(random.nextInt(count));
+            Point position = furniture.getPosition();
+            furniture.setPosition(new Point(position.x + random.nextInt(21) - 10, position.y + random.nextInt(21) - 10));
+            long begin = System.nanoTime();
+            index.update(furniture);
+            moves[i] = System.nanoTime() - begin;
+        }
+
+        BenchmarkSupport.report("Grid hit test", indexed);
+        BenchmarkSupport.report("Full scan", scanned);
+        BenchmarkSupport.report("Move (update)", moves);
+        System.out.println("Points on furniture: " + hits + "/" + QUERIES + ", index and scan disagree on " + mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // The last piece drawn that covers the point, found by testing every piece
+    private static Furniture scan(List<Furniture> furnitureList, double x, double y) {
+        for (int i = furnitureList.size() - 1; i >= 0; i--) {
+            if (Footprint.of(furnitureList.get(i), PIXELS_PER_METER).contains(x, y)) {
+                return furnitureList.get(i);
+            }
+        }
+        return null;
+    }
+}
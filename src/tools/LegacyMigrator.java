@@ -0,0 +1,262 @@
+package tools;
+
+import model.Design;
+import model.User;
+import util.Constants;
+import util.StorageBackends;
+import util.storage.AtomicFiles;
+import util.storage.DesignCodec;
+import util.storage.DesignStore;
+import util.storage.StorageBackend;
+import util.storage.UserStore;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves designs and users from the old designs.dat and users.dat into the storage backend chosen
+ * with -Droomdesigner.storage, so the application does not have to import them at start-up.
+ * Designs are converted to the DesignCodec format on a fork-join pool, a batch at a time, then
+ * stored and read back, and each stored design must encode to exactly the bytes of the original.
+ *
+ * A run that is interrupted can simply be started again: designs and users already in the store
+ * are not written twice. A design stored by an earlier run is only checked to still be there, since
+ * it may have been edited in the application since. The old files are renamed to .imported only
+ * once everything in them is stored and verified.
+ * Usage: java tools.LegacyMigrator [dataDirectory] [threads]
+ */
+public class LegacyMigrator {
+    private static final int BATCH_SIZE = 512;
+    private static final int PROGRESS_INTERVAL = 20;
+
+    // Designs one fork-join task handles itself instead of splitting further
+    private static final int SPLIT_THRESHOLD = 32;
+
+    public static void main(String[] args) {
+        File dataDirectory = new File(args.length > 0 ? args[0] : "data");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String backendName = System.getProperty(Constants.STORAGE_LAYOUT_PROPERTY, Constants.DEFAULT_STORAGE_LAYOUT);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean succeeded;
+        try {
+            StorageBackend backend = StorageBackends.forName(backendName);
+            succeeded = migrateDesigns(backend, dataDirectory, pool);
+            succeeded &= migrateUsers(backend, dataDirectory);
+        } catch (IOException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+            succeeded = false;
+        } finally {
+            pool.shutdown();
+        }
+        if (!succeeded) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean migrateDesigns(StorageBackend backend, File dataDirectory, ForkJoinPool pool)
+            throws IOException {
+        File legacyFile = new File(dataDirectory, Constants.DESIGNS_FILE);
+        if (!legacyFile.exists()) {
+            System.out.println("No " + legacyFile + " to migrate");
+            return true;
+        }
+
+        // The old format is one serialized list, so it has to be read whole before converting
+        long started = System.nanoTime();
+        List<Design> designs = readLegacy(legacyFile);
+        double readSeconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Read %d designs from %s in %.1f s%n", designs.size(), legacyFile, readSeconds);
+
+        started = System.nanoTime();
+        int stored = 0;
+        int alreadyStored = 0;
+        int failed = 0;
+        try (DesignStore store = backend.openDesignStore(dataDirectory)) {
+            for (int from = 0, batchNumber = 1; from < designs.size(); from += BATCH_SIZE, batchNumber++) {
+                List<Design> batch = designs.subList(from, Math.min(from + BATCH_SIZE, designs.size()));
+
+                Conversion[] conversions = new Conversion[batch.size()];
+                pool.invoke(new RangeTask(index -> conversions[index] = convert(batch.get(index)), 0, batch.size()));
+
+                List<Design> toStore = new ArrayList<>(batch.size());
+                for (Conversion conversion : conversions) {
+                    if (conversion.error != null) {
+                        continue;
+                    }
+                    // Stored by an earlier run that was interrupted
+                    if (store.contains(conversion.design.getId())) {
+                        conversion.alreadyStored = true;
+                        alreadyStored++;
+                    } else {
+                        toStore.add(conversion.design);
+                    }
+                }
+                store.putAll(toStore);
+                stored += toStore.size();
+
+                pool.invoke(new RangeTask(index -> verify(store, conversions[index]), 0, batch.size()));
+                for (Conversion conversion : conversions) {
+                    if (conversion.error != null) {
+                        System.err.println("Design " + conversion.design.getId() + ": " + conversion.error);
+                        failed++;
+                    }
+                }
+
+                if (batchNumber % PROGRESS_INTERVAL == 0) {
+                    System.out.println("Migrated " + (from + batch.size()) + "/" + designs.size() + " designs");
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Stored %d designs (%d were already stored, %d failed) into the %s store "
+                        + "in %.1f s (%.0f designs/s)%n",
+                stored, alreadyStored, failed, backend.getName(), seconds, designs.size() / seconds);
+        return finish(legacyFile, failed);
+    }
+
+    private static boolean migrateUsers(StorageBackend backend, File dataDirectory) throws IOException {
+        File legacyFile = new File(dataDirectory, Constants.USERS_FILE);
+        if (!legacyFile.exists()) {
+            System.out.println("No " + legacyFile + " to migrate");
+            return true;
+        }
+
+        Map<String, User> users = readLegacy(legacyFile);
+        int stored = 0;
+        int failed = 0;
+        try (UserStore store = backend.openUserStore(dataDirectory)) {
+            for (User user : users.values()) {
+                // An account already in the store may have changed since, so it is left as it is
+                if (!store.putIfAbsent(user)) {
+                    continue;
+                }
+                stored++;
+                User storedUser = store.read(user.getEmail());
+                if (storedUser == null || !storedUser.getPassword().equals(user.getPassword())
+                        || !storedUser.getDesignIds().equals(user.getDesignIds())) {
+                    System.err.println("User " + user.getEmail() + ": stored account does not match the original");
+                    failed++;
+                }
+            }
+        }
+        System.out.println("Stored " + stored + " of " + users.size() + " users (" + failed + " failed) into the "
+                + backend.getName() + " store");
+        return finish(legacyFile, failed);
+    }
+
+    // Rename the old file once all of it is migrated; otherwise keep it so the next run can retry
+    private static boolean finish(File legacyFile, int failed) throws IOException {
+        if (failed > 0) {
+            System.err.println("Keeping " + legacyFile + "; run the migrator again to retry");
+            return false;
+        }
+        AtomicFiles.replace(legacyFile, new File(legacyFile.getPath() + ".imported"));
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readLegacy(File legacyFile) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(legacyFile)))) {
+            return (T) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot read " + legacyFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Encode the design and check that decoding gives it back unchanged
+    private static Conversion convert(Design design) {
+        Conversion conversion = new Conversion(design);
+        try {
+            // Designs saved before versioning existed have never been stored in the new format
+            design.setVersion(0);
+            // Deserializing skips the setter, which turns a missing list into an empty one
+            if (design.getFurnitureList() == null) {
+                design.setFurnitureList(null);
+            }
+            conversion.encoded = DesignCodec.encode(design);
+            if (!Arrays.equals(DesignCodec.encode(DesignCodec.decode(conversion.encoded)), conversion.encoded)) {
+                conversion.error = "changes when encoded and decoded";
+            }
+        } catch (IOException | RuntimeException e) {
+            conversion.error = "cannot be encoded: " + e;
+        }
+        return conversion;
+    }
+
+    // The stored design must encode to the original bytes, apart from the version the store assigned.
+    // One stored by an earlier run only has to exist: it may have been edited and saved since.
+    private static void verify(DesignStore store, Conversion conversion) {
+        if (conversion.error != null) {
+            return;
+        }
+        try {
+            if (conversion.alreadyStored) {
+                if (!store.contains(conversion.design.getId())) {
+                    conversion.error = "missing after being stored";
+                }
+                return;
+            }
+            Design stored = store.read(conversion.design.getId());
+            if (stored == null) {
+                conversion.error = "missing after being stored";
+                return;
+            }
+            stored.setVersion(0);
+            if (!Arrays.equals(DesignCodec.encode(stored), conversion.encoded)) {
+                conversion.error = "stored design differs from the original";
+            }
+        } catch (IOException e) {
+            conversion.error = "cannot be read back: " + e.getMessage();
+        }
+    }
+
+    private static class Conversion {
+        private final Design design;
+        private byte[] encoded;
+        private String error;
+        private boolean alreadyStored;
+
+        Conversion(Design design) {
+            this.design = design;
+        }
+    }
+
+    private interface IndexStep {
+        void run(int index);
+    }
+
+    // Runs a step for every index in [from, to), splitting the range across the pool
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexStep step;
+        private final int from;
+        private final int to;
+
+        RangeTask(IndexStep step, int from, int to) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int index = from; index < to; index++) {
+                    step.run(index);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(step, from, middle), new RangeTask(step, middle, to));
+        }
+    }
+}
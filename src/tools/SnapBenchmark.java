@@ -0,0 +1,132 @@
+package tools;
+
+import model.Furniture;
+import util.geometry.Footprint;
+import util.geometry.Snap;
+import util.geometry.SnapIndex;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times snapping a dragged piece to walls, furniture and the grid through the sorted lines of
+ * SnapIndex, against a scan of every piece's lines, and checks that both snap the same way.
+ * Also times moving a piece, which re-enters its lines.
+ * Usage: java tools.SnapBenchmark [furniture] [roomMeters]
+ */
+public class SnapBenchmark {
+    private static final int PIXELS_PER_METER = 100;
+    private static final int QUERIES = 20000;
+    private static final double TOLERANCE = 8;
+    private static final int GRID_SIZE = 10;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int roomMeters = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int roomPixels = roomMeters * PIXELS_PER_METER;
+
+        Random random = new Random(42);
+        List<Furniture> furnitureList = BenchmarkSupport.randomFurniture(count, roomPixels, true, random);
+
+        SnapIndex index = new SnapIndex(PIXELS_PER_METER);
+        long start = System.nanoTime();
+        index.rebuild(furnitureList);
+        index.setWalls(roomPixels, roomPixels);
+        System.out.printf("Furniture: %d in a %d x %d m room, lines indexed in %.1f ms%n",
+                count, roomMeters, roomMeters, (System.nanoTime() - start) / 1e6);
+
+        Furniture[] dragged = new Furniture[QUERIES];
+        Footprint[] footprints = new Footprint[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            dragged[i] = furnitureList.get(random.nextInt(count));
+            footprints[i] = Footprint.of(dragged[i],
+                    new Point(random.nextInt(roomPixels), random.nextInt(roomPixels)), PIXELS_PER_METER);
+        }
+
+        // Warm up, and check the index against the scan
+        int mismatches = BenchmarkSupport.countMismatches(QUERIES, i -> {
+            Snap indexed = index.snap(dragged[i], footprints[i], TOLERANCE, GRID_SIZE);
+            Snap scanned = scan(furnitureList, roomPixels, dragged[i], footprints[i]);
+            return Math.abs(Math.abs(indexed.getOffsetX()) - Math.abs(scanned.getOffsetX())) <= 1e-9
+                    && Math.abs(Math.abs(indexed.getOffsetY()) - Math.abs(scanned.getOffsetY())) <= 1e-9;
+        });
+
+        long[] snaps = new long[QUERIES];
+        long[] scans = new long[QUERIES];
+        int guided = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            long begin = System.nanoTime();
+            Snap snap = index.snap(dragged[i], footprints[i], TOLERANCE, GRID_SIZE);
+            snaps[i] = System.nanoTime() - begin;
+            if (!Double.isNaN(snap.getGuideX()) || !Double.isNaN(snap.getGuideY())) {
+                guided++;
+            }
+            begin = System.nanoTime();
+            scan(furnitureList, roomPixels, dragged[i], footprints[i]);
+            scans[i] = System.nanoTime() - begin;
+        }
+
+        long[] moves = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Furniture furniture = furnitureList.get(random.nextInt(count));
+            Point position = furniture.getPosition();
+            furniture.setPosition(new Point(position.x + random.nextInt(21) - 10, position.y + random.nextInt(21) - 10));
+            long begin = System.nanoTime();
+            index.update(furniture);
+            moves[i] = System.nanoTime() - begin;
+        }
+
+        BenchmarkSupport.report("Sorted lines", snaps);
+        BenchmarkSupport.report("Full scan", scans);
+        BenchmarkSupport.report("Move (update)", moves);
+        System.out.println("Snaps to walls or furniture: " + guided + "/" + QUERIES
+                + ", index and scan disagree on " + mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // The same snap found by testing the edges and centre against every wall and every other piece
+    private static Snap scan(List<Furniture> furnitureList, int roomPixels, Furniture dragged, Footprint footprint) {
+        List<double[]> others = new ArrayList<>();
+        others.add(new double[] {0, roomPixels, 0, roomPixels});
+        for (Furniture furniture : furnitureList) {
+            if (furniture != dragged) {
+                Footprint other = Footprint.of(furniture, PIXELS_PER_METER);
+                others.add(new double[] {other.getMinX(), (other.getMinX() + other.getMaxX()) / 2, other.getMaxX(),
+                        other.getMinY(), (other.getMinY() + other.getMaxY()) / 2, other.getMaxY()});
+            }
+        }
+        double[] x = scanAxis(others, footprint.getMinX(), footprint.getMaxX(), 0);
+        double[] y = scanAxis(others, footprint.getMinY(), footprint.getMaxY(), 1);
+        return new Snap(x[0], y[0], x[1], y[1]);
+    }
+
+    private static double[] scanAxis(List<double[]> others, double min, double max, int axis) {
+        double[] edges = {min, (min + max) / 2, max};
+        double bestOffset = Double.NaN;
+        double bestLine = Double.NaN;
+        for (int o = 0; o < others.size(); o++) {
+            double[] lines = others.get(o);
+            // Walls have two lines per axis, furniture three
+            int from = o == 0 ? axis * 2 : axis * 3;
+            int to = o == 0 ? from + 2 : from + 3;
+            for (int l = from; l < to; l++) {
+                for (double edge : edges) {
+                    double offset = lines[l] - edge;
+                    if (Math.abs(offset) <= TOLERANCE
+                            && (Double.isNaN(bestLine) || Math.abs(offset) < Math.abs(bestOffset))) {
+                        bestOffset = offset;
+                        bestLine = lines[l];
+                    }
+                }
+            }
+        }
+        if (!Double.isNaN(bestLine)) {
+            return new double[] {bestOffset, bestLine};
+        }
+        return new double[] {Math.round(min / GRID_SIZE) * (double) GRID_SIZE - min, Double.NaN};
+    }
+}
@@ -0,0 +1,206 @@
+package tools;
+
+import model.Design;
+import model.Furniture;
+import model.Room;
+import util.storage.CompressedDesignStore;
+import util.storage.DesignCodec;
+import util.storage.DesignLog;
+import util.storage.DesignStore;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the binary design codec with Java serialization, then the plain design log with
+ * the block-compressed store on disk size and single-design read latency.
+ * Usage: java tools.StorageBenchmark [designs] [furniturePerDesign]
+ */
+public class StorageBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int RANDOM_READS = 5000;
+
+    public static void main(String[] args) throws IOException {
+        int designCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int furniturePerDesign = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Design> designs = generateDesigns(designCount, furniturePerDesign, new Random(42));
+        System.out.println("Designs: " + designCount + ", furniture per design: " + furniturePerDesign);
+
+        Codec serialization = new Codec() {
+            @Override
+            public byte[] encode(Design design) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                    oos.writeObject(design);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            public Design decode(byte[] data) throws IOException {
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                    return (Design) ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        Codec binary = new Codec() {
+            @Override
+            public byte[] encode(Design design) throws IOException {
+                return DesignCodec.encode(design);
+            }
+
+            @Override
+            public Design decode(byte[] data) throws IOException {
+                return DesignCodec.decode(data);
+            }
+        };
+
+        run("Java serialization", serialization, designs);
+        run("DesignCodec", binary, designs);
+
+        System.out.println();
+        runStore("DesignLog", directory -> DesignLog.open(new File(directory, "designs.log")), designs);
+        runStore("CompressedDesignStore", CompressedDesignStore::open, designs);
+    }
+
+    // Write every design, reopen the store, then time reads of randomly chosen designs
+    private static void runStore(String label, StoreFactory factory, List<Design> designs) throws IOException {
+        File directory = Files.createTempDirectory("storage-benchmark").toFile();
+        try {
+            try (DesignStore store = factory.open(directory)) {
+                for (Design design : designs) {
+                    store.put(design);
+                }
+            }
+
+            long diskBytes = directorySize(directory);
+            long[] latencies = new long[RANDOM_READS];
+            Random random = new Random(7);
+            try (DesignStore store = factory.open(directory)) {
+                // Warm up before measuring
+                for (int i = 0; i < RANDOM_READS; i++) {
+                    store.read(1 + random.nextInt(designs.size()));
+                }
+                for (int i = 0; i < RANDOM_READS; i++) {
+                    int id = 1 + random.nextInt(designs.size());
+                    long start = System.nanoTime();
+                    store.read(id);
+                    latencies[i] = System.nanoTime() - start;
+                }
+            }
+
+            Arrays.sort(latencies);
+            double mean = Arrays.stream(latencies).average().orElse(0);
+            System.out.printf("%-22s disk %8.1f KB (%6.0f B/design)  read mean %6.1f us  p50 %6.1f us  p99 %6.1f us%n",
+                    label,
+                    diskBytes / 1024.0,
+                    (double) diskBytes / designs.size(),
+                    mean / 1e3,
+                    latencies[latencies.length / 2] / 1e3,
+                    latencies[latencies.length * 99 / 100] / 1e3);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static long directorySize(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.isDirectory() ? directorySize(file) : file.length();
+            }
+        }
+        return size;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void run(String label, Codec codec, List<Design> designs) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(designs.size());
+        long totalBytes = 0;
+        for (Design design : designs) {
+            byte[] data = codec.encode(design);
+            encoded.add(data);
+            totalBytes += data.length;
+        }
+
+        // First round warms up the JIT and is not reported
+        long bestEncode = Long.MAX_VALUE;
+        long bestDecode = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Design design : designs) {
+                codec.encode(design);
+            }
+            long encodeTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (byte[] data : encoded) {
+                codec.decode(data);
+            }
+            long decodeTime = System.nanoTime() - start;
+
+            if (round > 0) {
+                bestEncode = Math.min(bestEncode, encodeTime);
+                bestDecode = Math.min(bestDecode, decodeTime);
+            }
+        }
+
+        System.out.printf("%-20s size %8.1f KB (%6.0f B/design)  encode %8.0f designs/s  decode %8.0f designs/s%n",
+                label,
+                totalBytes / 1024.0,
+                (double) totalBytes / designs.size(),
+                designs.size() / (bestEncode / 1e9),
+                designs.size() / (bestDecode / 1e9));
+    }
+
+    static List<Design> generateDesigns(int count, int furniturePerDesign, Random random) {
+        Furniture.Type[] types = Furniture.Type.values();
+        List<Design> designs = new ArrayList<>(count);
+
+        for (int i = 1; i <= count; i++) {
+            Room room = new Room(3 + random.nextInt(8), 3 + random.nextInt(8), 3.0, Room.Shape.RECTANGLE,
+                    new Color(random.nextInt(0xFFFFFF)), new Color(random.nextInt(0xFFFFFF)));
+            Design design = new Design(i, "Design " + i, "user" + (i % 50) + "@example.com", room);
+
+            for (int j = 0; j < furniturePerDesign; j++) {
+                Furniture furniture = new Furniture(j + 1, types[random.nextInt(types.length)],
+                        0.4 + random.nextDouble(), 0.4 + random.nextDouble(), 0.5 + random.nextDouble());
+                furniture.setColor(new Color(random.nextInt(0xFFFFFF)));
+                furniture.setPosition(new Point(random.nextInt(800), random.nextInt(800)));
+                furniture.setRotation(random.nextInt(4) * 90.0);
+                design.addFurniture(furniture);
+            }
+            designs.add(design);
+        }
+        return designs;
+    }
+
+    private interface StoreFactory {
+        DesignStore open(File directory) throws IOException;
+    }
+
+    private interface Codec {
+        byte[] encode(Design design) throws IOException;
+
+        Design decode(byte[] data) throws IOException;
+    }
+}
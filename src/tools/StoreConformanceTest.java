@@ -0,0 +1,219 @@
+package tools;
+
+import model.Design;
+import model.DesignSummary;
+import model.Furniture;
+import model.User;
+import util.StorageBackends;
+import util.storage.DesignCodec;
+import util.storage.DesignConflictException;
+import util.storage.DesignStore;
+import util.storage.StorageBackend;
+import util.storage.UserStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the same checks against every storage backend in util.StorageBackends, each in an empty
+ * temporary data directory: reads, owner queries, versioned saves and conflicts, deletes,
+ * reopening, and the user store. Then times single saves, batch saves, random reads and owner
+ * listings so the backends can be compared. The h2 backend is skipped if its jar is not on the
+ * classpath. Exits with status 1 if any check fails.
+ * Usage: java tools.StoreConformanceTest [designs] [furniturePerDesign]
+ */
+public class StoreConformanceTest {
+    private static final int RANDOM_READS = 5000;
+    private static final String OWNER = "user7@example.com";
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        int designCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int furniturePerDesign = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        System.out.println("Designs: " + designCount + ", furniture per design: " + furniturePerDesign);
+
+        for (StorageBackend backend : StorageBackends.all()) {
+            if (backend.getName().equals("h2") && !hasClass("org.h2.Driver")) {
+                System.out.println(backend.getName() + ": skipped, H2 is not on the classpath");
+                continue;
+            }
+            File directory = Files.createTempDirectory("store-conformance").toFile();
+            try {
+                int failed = failures;
+                checkDesigns(backend, directory, Math.min(designCount, 200), furniturePerDesign);
+                checkUsers(backend, directory);
+                System.out.println(backend.getName() + ": " + (failures == failed ? "conformance OK" : "FAILED"));
+            } finally {
+                StorageBenchmark.deleteRecursively(directory);
+            }
+
+            directory = Files.createTempDirectory("store-throughput").toFile();
+            try {
+                measure(backend, directory, designCount, furniturePerDesign);
+            } finally {
+                StorageBenchmark.deleteRecursively(directory);
+            }
+        }
+
+        System.out.println(failures == 0 ? "OK" : failures + " checks FAILED");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void checkDesigns(StorageBackend backend, File directory, int count, int furniturePerDesign)
+            throws IOException {
+        String name = backend.getName();
+        List<Design> designs = StorageBenchmark.generateDesigns(count, furniturePerDesign, new Random(42));
+
+        try (DesignStore store = backend.openDesignStore(directory)) {
+            check(name, store.size() == 0 && store.getMaxId() == 0 && store.ids().length == 0, "new store is empty");
+            check(name, store.read(1) == null && !store.contains(1), "missing design reads as null");
+
+            for (Design design : designs.subList(0, count / 2)) {
+                store.put(design);
+            }
+            store.putAll(designs.subList(count / 2, count));
+            check(name, designs.stream().allMatch(design -> design.getVersion() == 1), "stored designs are at version 1");
+            check(name, store.size() == count && store.getMaxId() == count, "size and highest id count every design");
+        }
+
+        try (DesignStore store = backend.openDesignStore(directory)) {
+            List<Design> stored = store.readAll();
+            boolean same = stored.size() == count;
+            for (int i = 0; same && i < count; i++) {
+                same = Arrays.equals(DesignCodec.encode(stored.get(i)), DesignCodec.encode(designs.get(i)));
+            }
+            check(name, same, "designs read back unchanged after reopening, in id order");
+            check(name, Arrays.equals(store.ids(), designs.stream().mapToInt(Design::getId).toArray()), "ids in order");
+
+            int[] owned = designs.stream().filter(design -> design.getUserEmail().equals(OWNER))
+                    .mapToInt(Design::getId).toArray();
+            check(name, Arrays.equals(store.readByOwner(OWNER).stream().mapToInt(Design::getId).toArray(), owned),
+                    "readByOwner returns exactly the owner's designs");
+            List<DesignSummary> summaries = store.readSummariesByOwner(OWNER);
+            check(name, Arrays.equals(summaries.stream().mapToInt(DesignSummary::getId).toArray(), owned)
+                    && summaries.stream().allMatch(summary -> summary.getFurnitureCount() == furniturePerDesign),
+                    "readSummariesByOwner matches readByOwner");
+
+            Design edited = store.read(1);
+            Design stale = store.read(1);
+            edited.addFurniture(new Furniture(furniturePerDesign + 1, Furniture.Type.CHAIR, 1.0, 1.0, 1.0));
+            store.put(edited);
+            check(name, edited.getVersion() == 2 && store.read(1).getFurnitureList().size() == furniturePerDesign + 1,
+                    "saving an edited design stores it as the next version");
+            check(name, rejects(store, stale) && stale.getVersion() == 1,
+                    "saving a stale copy is rejected and leaves its version alone");
+            Design duplicate = StorageBenchmark.generateDesigns(1, 0, new Random(1)).get(0);
+            check(name, rejects(store, duplicate) && store.read(1).getVersion() == 2,
+                    "a new design cannot overwrite a stored id");
+
+            store.delete(2);
+            check(name, store.read(2) == null && !store.contains(2) && store.size() == count - 1
+                    && store.getMaxId() == count, "deleted design is gone and the highest id is kept");
+        }
+
+        try (DesignStore store = backend.openDesignStore(directory)) {
+            check(name, store.read(1).getVersion() == 2 && store.read(2) == null && store.size() == count - 1,
+                    "edits and deletes survive reopening");
+        }
+    }
+
+    private static void checkUsers(StorageBackend backend, File directory) throws IOException {
+        String name = backend.getName();
+        try (UserStore users = backend.openUserStore(directory)) {
+            check(name, users.read(OWNER) == null && users.size() == 0, "new user store is empty");
+            check(name, users.putIfAbsent(new User(OWNER, "secret")), "a new email can register");
+            check(name, !users.putIfAbsent(new User(OWNER, "other")), "a taken email cannot register again");
+            check(name, users.update("nobody@example.com", user -> user.addDesignId(1)) == null,
+                    "updating a missing user returns null");
+            for (int id : new int[]{5, 3, 9}) {
+                users.update(OWNER, user -> user.addDesignId(id));
+            }
+            users.update(OWNER, user -> user.removeDesignId(3));
+            users.putIfAbsent(new User("second@example.com", "pw"));
+        }
+
+        try (UserStore users = backend.openUserStore(directory)) {
+            User owner = users.read(OWNER);
+            check(name, owner != null && owner.getPassword().equals("secret")
+                    && owner.getDesignIds().equals(List.of(5, 9)), "user design ids survive reopening, in order");
+            check(name, users.size() == 2 && users.readAll().keySet().containsAll(List.of(OWNER, "second@example.com")),
+                    "readAll returns every user");
+        }
+    }
+
+    // Time single saves, one batch save, random reads and owner listings on a fresh store
+    private static void measure(StorageBackend backend, File directory, int count, int furniturePerDesign)
+            throws IOException {
+        List<Design> designs = StorageBenchmark.generateDesigns(count, furniturePerDesign, new Random(42));
+        List<Design> batch = new ArrayList<>(designs.subList(count / 2, count));
+
+        try (DesignStore store = backend.openDesignStore(directory)) {
+            long start = System.nanoTime();
+            for (Design design : designs.subList(0, count / 2)) {
+                store.put(design);
+            }
+            double puts = rate(count / 2, start);
+
+            start = System.nanoTime();
+            store.putAll(batch);
+            double batchPuts = rate(batch.size(), start);
+
+            Random random = new Random(7);
+            for (int i = 0; i < RANDOM_READS; i++) {
+                store.read(1 + random.nextInt(count));
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < RANDOM_READS; i++) {
+                store.read(1 + random.nextInt(count));
+            }
+            double reads = rate(RANDOM_READS, start);
+
+            int listings = 200;
+            start = System.nanoTime();
+            for (int i = 0; i < listings; i++) {
+                store.readSummariesByOwner("user" + (i % 50) + "@example.com");
+            }
+            double summaries = rate(listings, start);
+
+            System.out.printf("%-10s  put %8.0f/s  putAll %8.0f/s  read %8.0f/s  owner summaries %7.0f/s%n",
+                    backend.getName(), puts, batchPuts, reads, summaries);
+        }
+    }
+
+    private static double rate(int operations, long start) {
+        return operations / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static boolean rejects(DesignStore store, Design design) throws IOException {
+        try {
+            store.put(design);
+            return false;
+        } catch (DesignConflictException e) {
+            return true;
+        }
+    }
+
+    private static boolean hasClass(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static void check(String backend, boolean passed, String description) {
+        if (!passed) {
+            failures++;
+            System.out.println(backend + ": FAIL " + description);
+        }
+    }
+}
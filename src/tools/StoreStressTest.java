@@ -0,0 +1,174 @@
+package tools;
+
+import model.Design;
+import model.Furniture;
+import model.Room;
+import model.User;
+import util.storage.DesignConflictException;
+import util.storage.DesignLog;
+import util.storage.UserLog;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Runs several writer processes against one design log and user log, then checks that no
+ * update was lost. Each worker repeatedly loads a random design, adds a piece of furniture with
+ * an id unique to that worker and update, and saves it, loading again whenever the save is
+ * rejected as a conflict. Every tenth update also adds an id to a shared user account, and the
+ * first worker compacts the log now and then, so saves also race with the log being replaced.
+ * Exits with status 1 if any furniture or user design id is missing or duplicated.
+ * Usage: java tools.StoreStressTest [processes] [updatesPerProcess] [designs]
+ */
+public class StoreStressTest {
+    private static final String USER_EMAIL = "shared@example.com";
+
+    // Furniture and design ids written by a worker are worker * ID_RANGE + update number
+    private static final int ID_RANGE = 1_000_000;
+    private static final int USER_UPDATE_INTERVAL = 10;
+    private static final int COMPACTION_INTERVAL = 250;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("worker")) {
+            runWorker(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int designCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        File directory = Files.createTempDirectory("store-stress").toFile();
+        System.out.println("Store: " + directory + ", processes: " + processes
+                + ", updates per process: " + updates + ", designs: " + designCount);
+
+        try (DesignLog log = DesignLog.open(new File(directory, "designs.log"));
+             UserLog users = UserLog.open(new File(directory, "users.log"))) {
+            for (int id = 1; id <= designCount; id++) {
+                log.put(new Design(id, "Design " + id, USER_EMAIL, new Room(5, 5, 3.0, Room.Shape.RECTANGLE,
+                        Color.LIGHT_GRAY, Color.WHITE)));
+            }
+            users.put(new User(USER_EMAIL, "password"));
+        }
+
+        long started = System.nanoTime();
+        List<Process> workers = new ArrayList<>();
+        for (int worker = 0; worker < processes; worker++) {
+            ProcessBuilder builder = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    StoreStressTest.class.getName(), "worker",
+                    directory.getPath(), String.valueOf(worker), String.valueOf(updates), String.valueOf(designCount));
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(directory, "worker-" + worker + ".out"));
+            workers.add(builder.start());
+        }
+
+        boolean failed = false;
+        for (int worker = 0; worker < processes; worker++) {
+            int status = workers.get(worker).waitFor();
+            List<String> output = Files.readAllLines(new File(directory, "worker-" + worker + ".out").toPath());
+            if (status != 0) {
+                System.out.println("Worker " + worker + " exited with status " + status + ":");
+                output.forEach(line -> System.out.println("  " + line));
+                failed = true;
+            } else {
+                System.out.println("Worker " + worker + ": " + output.get(output.size() - 1));
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%d updates in %.1f s (%.0f updates/s)%n",
+                processes * updates, seconds, processes * updates / seconds);
+
+        failed |= !verify(directory, processes, updates);
+        System.out.println(failed ? "FAILED" : "OK: no lost updates");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void runWorker(File directory, int worker, int updates, int designCount) throws IOException {
+        Random random = new Random(worker);
+        Furniture.Type[] types = Furniture.Type.values();
+        int conflicts = 0;
+
+        try (DesignLog log = DesignLog.open(new File(directory, "designs.log"));
+             UserLog users = UserLog.open(new File(directory, "users.log"))) {
+            for (int update = 0; update < updates; update++) {
+                int uniqueId = worker * ID_RANGE + update;
+                int designId = 1 + random.nextInt(designCount);
+
+                while (true) {
+                    Design design = log.read(designId);
+                    design.addFurniture(new Furniture(uniqueId, types[random.nextInt(types.length)], 1.0, 1.0, 1.0));
+                    try {
+                        log.put(design);
+                        break;
+                    } catch (DesignConflictException e) {
+                        conflicts++;
+                    }
+                }
+
+                if (update % USER_UPDATE_INTERVAL == 0) {
+                    users.update(USER_EMAIL, user -> user.addDesignId(uniqueId));
+                }
+                if (worker == 0 && update % COMPACTION_INTERVAL == COMPACTION_INTERVAL - 1) {
+                    log.compact();
+                }
+            }
+        }
+        System.out.println(updates + " updates, " + conflicts + " conflicts retried");
+    }
+
+    // Every worker's furniture and user design ids must be stored exactly once
+    private static boolean verify(File directory, int processes, int updates) throws IOException {
+        Set<Integer> furniture = new HashSet<>();
+        int duplicates = 0;
+        int versions = 0;
+        List<Integer> userDesignIds;
+
+        try (DesignLog log = DesignLog.open(new File(directory, "designs.log"));
+             UserLog users = UserLog.open(new File(directory, "users.log"))) {
+            for (Design design : log.readAll()) {
+                versions += design.getVersion();
+                for (Furniture item : design.getFurnitureList()) {
+                    if (!furniture.add(item.getId())) {
+                        duplicates++;
+                    }
+                }
+            }
+            userDesignIds = users.read(USER_EMAIL).getDesignIds();
+            versions -= log.size();
+        }
+
+        int missing = 0;
+        int missingUserIds = 0;
+        for (int worker = 0; worker < processes; worker++) {
+            for (int update = 0; update < updates; update++) {
+                int uniqueId = worker * ID_RANGE + update;
+                if (!furniture.contains(uniqueId)) {
+                    missing++;
+                }
+                if (update % USER_UPDATE_INTERVAL == 0 && !userDesignIds.contains(uniqueId)) {
+                    missingUserIds++;
+                }
+            }
+        }
+
+        int expectedUserIds = processes * ((updates + USER_UPDATE_INTERVAL - 1) / USER_UPDATE_INTERVAL);
+        System.out.println("Furniture stored: " + furniture.size() + "/" + processes * updates
+                + ", missing: " + missing + ", duplicated: " + duplicates
+                + ", design saves: " + versions);
+        System.out.println("User design ids: " + userDesignIds.size() + "/" + expectedUserIds
+                + ", missing: " + missingUserIds);
+        return missing == 0 && duplicates == 0 && versions == processes * updates
+                && missingUserIds == 0 && userDesignIds.size() == expectedUserIds;
+    }
+}
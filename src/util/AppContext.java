@@ -13,6 +13,9 @@ public class AppContext {
     private final Design3DController design3DController;
     private final FurnitureController furnitureController;
 
+    // Cached access to saved designs, shared by the controllers
+    private final DesignRepository designRepository;
+
     // JavaFX manager
     private final JavaFXManager javaFXManager;
 
@@ -26,11 +29,12 @@ public class AppContext {
         this.javaFXManager.initialize();
 
         // Initialize controllers
+        this.designRepository = new DesignRepository();
         this.furnitureController = new FurnitureController();
         this.authController = new AuthController();
-        this.dashboardController = new DashboardController(authController);
-        this.roomController = new RoomController(authController);
-        this.design2DController = new Design2DController(authController, furnitureController);
+        this.dashboardController = new DashboardController(authController, designRepository);
+        this.roomController = new RoomController(authController, designRepository);
+        this.design2DController = new Design2DController(authController, furnitureController, designRepository);
         this.design3DController = new Design3DController(authController, furnitureController);
 
         System.out.println("[AppContext] Context initialized with all controllers");
@@ -61,6 +65,10 @@ public class AppContext {
         return furnitureController;
     }
 
+    public DesignRepository getDesignRepository() {
+        return designRepository;
+    }
+
     // JavaFX state management
     public JavaFXManager getJavaFXManager() {
         return javaFXManager;
@@ -12,7 +12,23 @@ public class Constants {
 
     // File paths
     public static final String USERS_FILE = "users.dat";
+    public static final String USER_LOG_FILE = "users.log";
     public static final String DESIGNS_FILE = "designs.dat";
+    public static final String DESIGN_LOG_FILE = "designs.log";
+    public static final String DESIGN_SHARDS_DIR = "designs";
+    public static final String DESIGN_SEGMENTS_DIR = "designs-compressed";
+    public static final String DESIGN_ID_SEQUENCE_FILE = "design-ids.seq";
+    public static final String DESIGN_HISTORY_FILE = "design-history.log";
+    public static final String DATABASE_NAME = "roomdesigner";
+
+    // Storage backend: "log" (single append-only file), "sharded" (one file per design),
+    // "compressed" (records packed into deflated blocks) or "h2" (embedded database, needs the H2 jar).
+    // Can be overridden at launch with -Droomdesigner.storage=...
+    public static final String STORAGE_LAYOUT_PROPERTY = "roomdesigner.storage";
+    public static final String DEFAULT_STORAGE_LAYOUT = "log";
+
+    // Number of designs kept in memory by DesignRepository
+    public static final int DESIGN_CACHE_SIZE = 64;
 
     // Color constants
     public static final Color PRIMARY_COLOR = new Color(0, 102, 204);    // Blue
@@ -56,6 +72,10 @@ public class Constants {
     public static final double CABINET_LENGTH = 0.4;
     public static final double CABINET_HEIGHT = 1.8;
 
+    // Furniture positions are kept on the 2D canvas, where 1 meter is this many units;
+    // the 2D view shows one unit per screen pixel at 100% zoom
+    public static final int PIXELS_PER_METER = 100;
+
     // Default room dimensions
     public static final double DEFAULT_ROOM_WIDTH = 4.0;
     public static final double DEFAULT_ROOM_LENGTH = 5.0;
@@ -0,0 +1,235 @@
+package util;
+
+import model.Design;
+import model.DesignRevision;
+import model.DesignSummary;
+import util.storage.DesignCodec;
+import util.storage.DesignConflictException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Controller-facing access to saved designs, with a bounded LRU cache in front of FileManager.
+ * Cached designs are private copies: callers always get their own copy to edit, and only a
+ * save or update changes what the cache holds.
+ */
+public class DesignRepository {
+    private final int capacity;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<Integer, Design> cache;
+
+    // Ids of each user's designs, so a dashboard refresh does not go back to disk
+    private final Map<String, List<Integer>> ownerDesignIds = new HashMap<>();
+
+    // Designs with queued saves that have not all finished; they stay out of the cache meanwhile
+    private final Map<Integer, PendingSaves> pendingSaves = new HashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public DesignRepository() {
+        this(Constants.DESIGN_CACHE_SIZE);
+    }
+
+    public DesignRepository(int capacity) {
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Integer, Design>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Design> eldest) {
+                if (size() > DesignRepository.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Design findById(int designId) {
+        Design cached = cache.get(designId);
+        if (cached != null) {
+            hits++;
+            return copy(cached);
+        }
+
+        misses++;
+        Design design = FileManager.loadDesign(designId);
+        if (design != null) {
+            cache.put(designId, copy(design));
+        }
+        return design;
+    }
+
+    public synchronized List<Design> findByOwner(String userEmail) {
+        List<Integer> ids = ownerDesignIds.get(userEmail);
+        if (ids == null) {
+            List<Design> designs = FileManager.getUserDesigns(userEmail);
+            ids = new ArrayList<>(designs.size());
+            for (Design design : designs) {
+                ids.add(design.getId());
+                cache.put(design.getId(), copy(design));
+            }
+            ownerDesignIds.put(userEmail, ids);
+            misses += designs.size();
+            return designs;
+        }
+
+        List<Design> designs = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            Design design = findById(id);
+            if (design != null) {
+                designs.add(design);
+            }
+        }
+        return designs;
+    }
+
+    // Summaries read from the start of each record; listing designs never decodes furniture
+    public List<DesignSummary> findSummariesByOwner(String userEmail) {
+        return FileManager.getUserDesignSummaries(userEmail);
+    }
+
+    // Every saved revision of a design, oldest first
+    public List<DesignRevision> findRevisions(int designId) {
+        return FileManager.getDesignRevisions(designId);
+    }
+
+    // A design as it was at an earlier save; not cached, since old revisions never change
+    public Design findRevision(int designId, int revision) {
+        return FileManager.loadDesignRevision(designId, revision);
+    }
+
+    // Number of stored designs, without loading any of them
+    public int count() {
+        return FileManager.countDesigns();
+    }
+
+    /**
+     * Queue a save on the background writer. Until it is stored, reads of the design go through
+     * FileManager, which sees the queued save; once every queued save of it has finished, the
+     * cache takes the design as it was last stored. A failed save leaves the design out of the
+     * cache, and a conflict also forgets its owner's design ids, since another process has been
+     * writing them; the next read then sees what that process stored.
+     */
+    public synchronized CompletableFuture<Design> save(Design design) {
+        int designId = design.getId();
+        cache.remove(designId);
+        pendingSaves.computeIfAbsent(designId, id -> new PendingSaves()).count++;
+
+        CompletableFuture<Design> saved = FileManager.saveDesignAsync(design);
+        // Async, since the writer thread completes the future and must not wait for this lock
+        String owner = design.getUserEmail();
+        saved.whenCompleteAsync((stored, error) -> saveFinished(designId, owner, stored, error));
+        return saved;
+    }
+
+    // Add a new design, assigning its id; returns false if it could not be stored
+    public synchronized boolean add(Design design) {
+        if (FileManager.addDesign(design)) {
+            remember(design);
+            return true;
+        }
+        return false;
+    }
+
+    // Returns false if the design does not exist or was changed elsewhere since it was loaded
+    public synchronized boolean update(Design design) {
+        if (FileManager.updateDesign(design)) {
+            remember(design);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void delete(int designId) {
+        FileManager.deleteDesign(designId);
+        cache.remove(designId);
+        for (List<Integer> ids : ownerDesignIds.values()) {
+            ids.remove(Integer.valueOf(designId));
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DesignRepository{cached=" + cache.size() + "/" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private void remember(Design design) {
+        Design previous = cache.put(design.getId(), copy(design));
+        if (previous != null && !Objects.equals(previous.getUserEmail(), design.getUserEmail())) {
+            ownerDesignIds.remove(previous.getUserEmail());
+        }
+
+        List<Integer> ids = ownerDesignIds.get(design.getUserEmail());
+        if (ids != null && !ids.contains(design.getId())) {
+            ids.add(design.getId());
+        }
+    }
+
+    // Callbacks may run in any order, so the newest stored version is kept until the last one
+    private synchronized void saveFinished(int designId, String owner, Design stored, Throwable error) {
+        PendingSaves pending = pendingSaves.get(designId);
+        if (stored != null && (pending.latest == null || stored.getVersion() > pending.latest.getVersion())) {
+            pending.latest = stored;
+        }
+        if (error != null) {
+            pending.failed = true;
+            if (error instanceof DesignConflictException || error.getCause() instanceof DesignConflictException) {
+                ownerDesignIds.remove(owner);
+            }
+        }
+        if (--pending.count > 0) {
+            return;
+        }
+        pendingSaves.remove(designId);
+        if (pending.failed) {
+            cache.remove(designId);
+        } else if (pending.latest != null) {
+            remember(pending.latest);
+        }
+    }
+
+    private static class PendingSaves {
+        private int count;
+        private Design latest;
+        private boolean failed;
+    }
+
+    private static Design copy(Design design) {
+        try {
+            return DesignCodec.copy(design);
+        } catch (IOException e) {
+            // Encoding to memory only fails on malformed designs
+            throw new IllegalStateException("Cannot copy design " + design.getId(), e);
+        }
+    }
+}
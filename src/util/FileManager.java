@@ -1,17 +1,46 @@
 package util;
 
 import model.Design;
+import model.DesignRevision;
+import model.DesignSummary;
 import model.User;
+import util.storage.AtomicFiles;
+import util.storage.DesignArchive;
+import util.storage.DesignHistory;
+import util.storage.DesignLog;
+import util.storage.DesignStore;
+import util.storage.DesignWriteQueue;
+import util.storage.IdSequence;
+import util.storage.LogCompactor;
+import util.storage.StorageBackend;
+import util.storage.UserStore;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class FileManager {
+    private static final File DATA_DIRECTORY = new File("data");
     private static final String USERS_FILE_PATH = "data/" + Constants.USERS_FILE;
     private static final String DESIGNS_FILE_PATH = "data/" + Constants.DESIGNS_FILE;
+    private static final String DESIGN_ID_SEQUENCE_PATH = "data/" + Constants.DESIGN_ID_SEQUENCE_FILE;
+    private static final String DESIGN_HISTORY_PATH = "data/" + Constants.DESIGN_HISTORY_FILE;
+
+    // Opened on first use and kept for the lifetime of the application
+    private static UserStore userStore;
+    private static DesignStore designStore;
+    private static DesignWriteQueue writeQueue;
+    private static LogCompactor compactor;
+    private static IdSequence designIds;
+    private static DesignHistory designHistory;
 
     // Create data directory if it doesn't exist
     static {
@@ -22,106 +51,426 @@ public class FileManager {
     }
 
     // User methods
-    public static void saveUsers(Map<String, User> users) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(USERS_FILE_PATH))) {
-            oos.writeObject(users);
+    private static synchronized UserStore getUserStore() throws IOException {
+        if (userStore == null) {
+            userStore = getStorageBackend().openUserStore(DATA_DIRECTORY);
+
+            // Carry accounts over from the old users.dat, which held the whole map
+            File legacyFile = new File(USERS_FILE_PATH);
+            if (legacyFile.exists()) {
+                importLegacyUsers(legacyFile);
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(FileManager::closeUserStore, "user-store-close"));
+        }
+        return userStore;
+    }
+
+    // Release the user store so its index is marked clean
+    public static synchronized void closeUserStore() {
+        if (userStore == null) {
+            return;
+        }
+        try {
+            userStore.close();
         } catch (IOException e) {
-            System.err.println("Error saving users: " + e.getMessage());
+            System.err.println("Error closing user store: " + e.getMessage());
         }
+        userStore = null;
     }
 
+    // Copy accounts from users.dat into the user log, then rename the old file so it is not imported twice
     @SuppressWarnings("unchecked")
+    private static void importLegacyUsers(File legacyFile) throws IOException {
+        Map<String, User> users;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(legacyFile))) {
+            users = (Map<String, User>) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading users from " + legacyFile + ", keeping it for the next start: "
+                    + e.getMessage());
+            return;
+        }
+
+        for (User user : users.values()) {
+            // Another instance may have imported the file or registered the email already
+            userStore.putIfAbsent(user);
+        }
+        AtomicFiles.replace(legacyFile, new File(legacyFile.getPath() + ".imported"));
+        System.out.println("Imported " + users.size() + " users into the " + getStorageBackend().getName()
+                + " store");
+    }
+
+    // Look up one account by email; null if there is none
+    public static User loadUser(String email) {
+        try {
+            return getUserStore().read(email);
+        } catch (IOException e) {
+            System.err.println("Error loading user " + email + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Store a new account; returns false if the email is taken or the account could not be saved
+    public static boolean registerUser(User user) {
+        try {
+            return getUserStore().putIfAbsent(user);
+        } catch (IOException e) {
+            System.err.println("Error saving user " + user.getEmail() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Change one account on top of its latest stored state, so changes made by another running
+     * instance are kept. Returns the updated account, or null if it does not exist or cannot be saved.
+     */
+    public static User updateUser(String email, Consumer<User> change) {
+        try {
+            return getUserStore().update(email, change);
+        } catch (IOException e) {
+            System.err.println("Error saving user " + email + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     public static Map<String, User> loadUsers() {
-        File file = new File(USERS_FILE_PATH);
-        if (!file.exists()) {
+        try {
+            return getUserStore().readAll();
+        } catch (IOException e) {
+            System.err.println("Error loading users: " + e.getMessage());
             return new HashMap<>();
         }
+    }
+
+    // The backend named by -Droomdesigner.storage, "log" unless set
+    private static StorageBackend getStorageBackend() throws IOException {
+        return StorageBackends.forName(
+                System.getProperty(Constants.STORAGE_LAYOUT_PROPERTY, Constants.DEFAULT_STORAGE_LAYOUT));
+    }
+
+    // Design methods
+    private static synchronized DesignStore getDesignStore() throws IOException {
+        if (designStore == null) {
+            StorageBackend backend = getStorageBackend();
+            designStore = backend.openDesignStore(DATA_DIRECTORY);
+
+            // Old versions of edited and deleted designs are reclaimed from the log in the background
+            if (designStore instanceof DesignLog) {
+                compactor = new LogCompactor((DesignLog) designStore);
+                compactor.requestCheck();
+            }
+
+            // Carry designs over from the old single-file format
+            File legacyFile = new File(DESIGNS_FILE_PATH);
+            if (legacyFile.exists()) {
+                importLegacyDesigns(legacyFile, backend.getName());
+            }
+
+            // Ids come from a durable sequence; stored designs set the lowest id it may start at
+            designIds = IdSequence.open(new File(DESIGN_ID_SEQUENCE_PATH), designStore.getMaxId() + 1L);
+            // Every stored save also becomes a revision in the design's history; deleted designs' revisions go when it is compacted
+            designHistory = DesignHistory.open(new File(DESIGN_HISTORY_PATH), designStore.ids());
+            writeQueue = new DesignWriteQueue(designStore, FileManager::recordRevision);
+
+            // Flush accepted writes and mark the index clean when the application exits
+            Runtime.getRuntime().addShutdownHook(new Thread(FileManager::closeDesignStore, "design-store-close"));
+        }
+        return designStore;
+    }
+
+    private static synchronized DesignWriteQueue getWriteQueue() throws IOException {
+        getDesignStore();
+        return writeQueue;
+    }
+
+    // Write any queued designs, then release the design store so its index is marked clean
+    public static synchronized void closeDesignStore() {
+        if (designStore == null) {
+            return;
+        }
+        try {
+            writeQueue.close();
+            if (compactor != null) {
+                compactor.close();
+            }
+            designStore.close();
+            designIds.close();
+            designHistory.close();
+        } catch (IOException e) {
+            System.err.println("Error closing design store: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        designStore = null;
+        writeQueue = null;
+        compactor = null;
+        designIds = null;
+        designHistory = null;
+    }
 
+    /**
+     * Copy designs from the old designs.dat into the store, then rename the old file so it is
+     * not imported twice. If the old file cannot be read it is left where it is and the import
+     * is retried on the next start, instead of silently starting with no designs.
+     */
+    @SuppressWarnings("unchecked")
+    private static void importLegacyDesigns(File legacyFile, String backendName) throws IOException {
+        List<Design> designs;
         try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(USERS_FILE_PATH))) {
-            return (Map<String, User>) ois.readObject();
+                new FileInputStream(legacyFile))) {
+            designs = (List<Design>) ois.readObject();
         } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading users: " + e.getMessage());
-            return new HashMap<>();
+            System.err.println("Error loading designs from " + legacyFile + ", keeping it for the next start: "
+                    + e.getMessage());
+            return;
+        }
+
+        for (Design design : designs) {
+            // Designs stored by an import that was cut short are already there
+            if (!designStore.contains(design.getId())) {
+                designStore.put(design);
+            }
         }
+        AtomicFiles.replace(legacyFile, new File(legacyFile.getPath() + ".imported"));
+        System.out.println("Imported " + designs.size() + " designs into the " + backendName + " store");
     }
 
-    // Design methods
+    // Replace the stored designs with the given list
     public static void saveDesigns(List<Design> designs) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(DESIGNS_FILE_PATH))) {
-            oos.writeObject(designs);
+        try {
+            DesignWriteQueue queue = getWriteQueue();
+            Set<Integer> keep = new HashSet<>();
+            for (Design design : designs) {
+                keep.add(design.getId());
+            }
+            for (Design existing : loadDesigns()) {
+                if (!keep.contains(existing.getId())) {
+                    queue.delete(existing.getId());
+                }
+            }
+            List<CompletableFuture<Design>> saves = new ArrayList<>();
+            for (Design design : designs) {
+                saves.add(queue.save(design));
+            }
+            queue.flush();
+            for (int i = 0; i < designs.size(); i++) {
+                CompletableFuture<Design> save = saves.get(i);
+                if (!save.isCompletedExceptionally()) {
+                    DesignWriteQueue.copyStoredVersion(save.join(), designs.get(i));
+                }
+            }
         } catch (IOException e) {
             System.err.println("Error saving designs: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    @SuppressWarnings("unchecked")
     public static List<Design> loadDesigns() {
-        File file = new File(DESIGNS_FILE_PATH);
-        if (!file.exists()) {
+        try {
+            return getWriteQueue().overlay(getDesignStore().readAll(), null);
+        } catch (IOException e) {
+            System.err.println("Error loading designs: " + e.getMessage());
             return new ArrayList<>();
         }
+    }
 
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(DESIGNS_FILE_PATH))) {
-            return (List<Design>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading designs: " + e.getMessage());
-            return new ArrayList<>();
+    // Load a single design without reading the others
+    public static Design loadDesign(int designId) {
+        try {
+            DesignWriteQueue queue = getWriteQueue();
+            if (queue.isPendingDelete(designId)) {
+                return null;
+            }
+            Design pending = queue.getPending(designId);
+            return pending != null ? pending : getDesignStore().read(designId);
+        } catch (IOException e) {
+            System.err.println("Error loading design " + designId + ": " + e.getMessage());
+            return null;
         }
     }
 
     // Get designs for a specific user
     public static List<Design> getUserDesigns(String userEmail) {
-        List<Design> allDesigns = loadDesigns();
-        List<Design> userDesigns = new ArrayList<>();
-
-        for (Design design : allDesigns) {
-            if (design.getUserEmail().equals(userEmail)) {
-                userDesigns.add(design);
-            }
+        try {
+            return getWriteQueue().overlay(getDesignStore().readByOwner(userEmail), userEmail);
+        } catch (IOException e) {
+            System.err.println("Error loading designs: " + e.getMessage());
+            return new ArrayList<>();
         }
-
-        return userDesigns;
     }
 
-    // Add a new design
-    public static void addDesign(Design design) {
-        List<Design> designs = loadDesigns();
+    // Summaries of a user's designs, for listing them without loading any furniture
+    public static List<DesignSummary> getUserDesignSummaries(String userEmail) {
+        try {
+            return getWriteQueue().overlaySummaries(getDesignStore().readSummariesByOwner(userEmail), userEmail);
+        } catch (IOException e) {
+            System.err.println("Error loading designs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
 
-        // Find the next available ID
-        int maxId = 0;
-        for (Design d : designs) {
-            if (d.getId() > maxId) {
-                maxId = d.getId();
-            }
+    // Number of stored designs, without reading any of them
+    public static int countDesigns() {
+        try {
+            return getDesignStore().size();
+        } catch (IOException e) {
+            System.err.println("Error opening design store: " + e.getMessage());
+            return 0;
         }
-        design.setId(maxId + 1);
+    }
 
-        designs.add(design);
-        saveDesigns(designs);
+    // Hand out the id a new design will be stored under; unique even across running instances
+    public static int reserveDesignId() {
+        try {
+            getDesignStore();
+            return designIds.next();
+        } catch (IOException e) {
+            System.err.println("Error allocating design id: " + e.getMessage());
+            return -1;
+        }
     }
 
-    // Update an existing design
-    public static void updateDesign(Design design) {
-        List<Design> designs = loadDesigns();
+    /**
+     * Queue a design for saving on the background writer and return straight away.
+     * The design must already have an id; the future completes once it is on disk.
+     */
+    public static CompletableFuture<Design> saveDesignAsync(Design design) {
+        try {
+            return getWriteQueue().save(design);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-        for (int i = 0; i < designs.size(); i++) {
-            if (designs.get(i).getId() == design.getId()) {
-                designs.set(i, design);
-                break;
-            }
+    // Add a new design; returns false if no id could be allocated for it or it could not be saved
+    public static boolean addDesign(Design design) {
+        int id = reserveDesignId();
+        if (id < 0) {
+            return false;
         }
+        design.setId(id);
+        return waitForWrite(design);
+    }
 
-        saveDesigns(designs);
+    // Update an existing design; returns false if there is no such design or it was changed elsewhere
+    public static boolean updateDesign(Design design) {
+        if (loadDesign(design.getId()) == null) {
+            return false;
+        }
+        return waitForWrite(design);
     }
 
     // Delete a design
     public static void deleteDesign(int designId) {
-        List<Design> designs = loadDesigns();
-        designs.removeIf(d -> d.getId() == designId);
-        saveDesigns(designs);
+        try {
+            getWriteQueue().delete(designId);
+        } catch (IOException e) {
+            System.err.println("Error saving designs: " + e.getMessage());
+        }
+    }
+
+    // Runs on the writer thread after each save reaches the store
+    private static void recordRevision(Design design) {
+        try {
+            designHistory.record(design);
+        } catch (IOException e) {
+            System.err.println("Error recording revision of design " + design.getId() + ": " + e.getMessage());
+        }
+    }
+
+    // Saved revisions of a design, oldest first
+    public static List<DesignRevision> getDesignRevisions(int designId) {
+        try {
+            getDesignStore();
+            return designHistory.list(designId);
+        } catch (IOException e) {
+            System.err.println("Error loading history of design " + designId + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // A design as it was saved at the given revision; null if there is no such revision
+    public static Design loadDesignRevision(int designId, int revision) {
+        try {
+            getDesignStore();
+            return designHistory.checkout(designId, revision);
+        } catch (IOException e) {
+            System.err.println("Error loading revision " + revision + " of design " + designId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Write one user's designs to a zip archive; returns how many were written, or -1 on error
+    public static int exportDesigns(File archive, String userEmail) {
+        try {
+            List<DesignSummary> summaries = getDesignStore().readSummariesByOwner(userEmail);
+            return exportDesigns(archive, summaries.stream().mapToInt(DesignSummary::getId).toArray());
+        } catch (IOException e) {
+            System.err.println("Error exporting designs: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Write the designs with ids from fromId to toId, inclusive, to a zip archive
+    public static int exportDesigns(File archive, int fromId, int toId) {
+        try {
+            int[] ids = Arrays.stream(getDesignStore().ids()).filter(id -> id >= fromId && id <= toId).toArray();
+            return exportDesigns(archive, ids);
+        } catch (IOException e) {
+            System.err.println("Error exporting designs: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static int exportDesigns(File archive, int[] ids) throws IOException {
+        try {
+            // Queued saves go into the archive too
+            getWriteQueue().flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        }
+
+        File partial = new File(archive.getPath() + ".part");
+        int written;
+        try (OutputStream out = new FileOutputStream(partial)) {
+            written = DesignArchive.export(designStore, ids, out);
+        }
+        AtomicFiles.replace(partial, archive);
+        return written;
+    }
+
+    /**
+     * Add every design in a zip archive under new ids, decoding on the given number of threads,
+     * and record them against their owners' accounts where those exist here.
+     * Returns how many designs were imported, or -1 on error.
+     */
+    public static int importDesigns(File archive, int threads) {
+        DesignArchive.ImportResult result;
+        try (InputStream in = new FileInputStream(archive)) {
+            getDesignStore();
+            result = DesignArchive.importArchive(in, designStore, threads, designIds::next);
+        } catch (IOException e) {
+            System.err.println("Error importing designs: " + e.getMessage());
+            return -1;
+        }
+
+        for (Map.Entry<String, List<Integer>> owner : result.getIdsByOwner().entrySet()) {
+            updateUser(owner.getKey(), user -> owner.getValue().forEach(user::addDesignId));
+        }
+        return result.getImported();
+    }
+
+    // Save the design and wait for it, then give it the stored version on the calling thread
+    private static boolean waitForWrite(Design design) {
+        try {
+            DesignWriteQueue.copyStoredVersion(saveDesignAsync(design).join(), design);
+            return true;
+        } catch (CompletionException e) {
+            System.err.println("Error saving designs: " + e.getCause().getMessage());
+            return false;
+        }
     }
 }
\ No newline at end of file
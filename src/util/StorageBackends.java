@@ -0,0 +1,105 @@
+package util;
+
+import util.storage.CompressedDesignStore;
+import util.storage.DesignLog;
+import util.storage.DesignStore;
+import util.storage.JdbcDesignStore;
+import util.storage.JdbcUserStore;
+import util.storage.ShardedDesignStore;
+import util.storage.StorageBackend;
+import util.storage.UserLog;
+import util.storage.UserStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The storage backends available to FileManager: the file-based layouts, the embedded database,
+ * and any registered through ServiceLoader.
+ */
+public final class StorageBackends {
+    private StorageBackends() {
+    }
+
+    public static List<StorageBackend> all() {
+        List<StorageBackend> backends = new ArrayList<>();
+        backends.add(new FileBackend("log") {
+            @Override
+            public DesignStore openDesignStore(File dataDirectory) throws IOException {
+                return DesignLog.open(new File(dataDirectory, Constants.DESIGN_LOG_FILE));
+            }
+        });
+        backends.add(new FileBackend("sharded") {
+            @Override
+            public DesignStore openDesignStore(File dataDirectory) throws IOException {
+                return ShardedDesignStore.open(new File(dataDirectory, Constants.DESIGN_SHARDS_DIR));
+            }
+        });
+        backends.add(new FileBackend("compressed") {
+            @Override
+            public DesignStore openDesignStore(File dataDirectory) throws IOException {
+                return CompressedDesignStore.open(new File(dataDirectory, Constants.DESIGN_SEGMENTS_DIR));
+            }
+        });
+        backends.add(new JdbcBackend());
+        for (StorageBackend backend : ServiceLoader.load(StorageBackend.class)) {
+            backends.add(backend);
+        }
+        return backends;
+    }
+
+    public static StorageBackend forName(String name) throws IOException {
+        for (StorageBackend backend : all()) {
+            if (backend.getName().equals(name)) {
+                return backend;
+            }
+        }
+        throw new IOException("Unknown storage backend: " + name);
+    }
+
+    // The file layouts differ in how designs are stored; users always go to the user log
+    private abstract static class FileBackend implements StorageBackend {
+        private final String name;
+
+        FileBackend(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public UserStore openUserStore(File dataDirectory) throws IOException {
+            return UserLog.open(new File(dataDirectory, Constants.USER_LOG_FILE));
+        }
+    }
+
+    // Designs and users in one embedded H2 database file
+    private static class JdbcBackend implements StorageBackend {
+        @Override
+        public String getName() {
+            return "h2";
+        }
+
+        @Override
+        public DesignStore openDesignStore(File dataDirectory) throws IOException {
+            return JdbcDesignStore.open(url(dataDirectory));
+        }
+
+        @Override
+        public UserStore openUserStore(File dataDirectory) throws IOException {
+            return JdbcUserStore.open(url(dataDirectory));
+        }
+
+        // FileManager closes the stores from its own shutdown hook, so H2 must not close the database first
+        private static String url(File dataDirectory) {
+            return "jdbc:h2:" + new File(dataDirectory, Constants.DATABASE_NAME).getAbsolutePath()
+                    + ";DB_CLOSE_ON_EXIT=FALSE";
+        }
+    }
+}
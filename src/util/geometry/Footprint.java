@@ -0,0 +1,152 @@
+package util.geometry;
+
+import model.Furniture;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * The area a piece of furniture covers in the 2D view, in pixels: its width x length rectangle
+ * at its position, rotated about the rectangle's centre exactly as Design2DView draws it.
+ * Also keeps the axis-aligned box around the rotated rectangle, for indexing, and the rotated
+ * corners, for the separating-axis test of overlaps().
+ */
+public final class Footprint {
+    // Projections closer than this count as touching, not overlapping, so pieces can stand edge to edge
+    private static final double TOUCH_TOLERANCE = 1e-6;
+
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+    private final double centerX;
+    private final double centerY;
+    private final double cos;
+    private final double sin;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    // Rotated corners as x0, y0, x1, y1, ...
+    private final double[] corners;
+
+    private Footprint(double x, double y, double width, double height, double centerX, double centerY,
+                      double rotationDegrees) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        double radians = Math.toRadians(rotationDegrees);
+        this.cos = Math.cos(radians);
+        this.sin = Math.sin(radians);
+
+        // Half extents of the rotated rectangle along each axis
+        double halfX = (Math.abs(width * cos) + Math.abs(height * sin)) / 2;
+        double halfY = (Math.abs(width * sin) + Math.abs(height * cos)) / 2;
+        double middleX = rotateX(x + width / 2, y + height / 2);
+        double middleY = rotateY(x + width / 2, y + height / 2);
+        this.minX = middleX - halfX;
+        this.minY = middleY - halfY;
+        this.maxX = middleX + halfX;
+        this.maxY = middleY + halfY;
+
+        this.corners = new double[] {
+                rotateX(x, y), rotateY(x, y),
+                rotateX(x + width, y), rotateY(x + width, y),
+                rotateX(x + width, y + height), rotateY(x + width, y + height),
+                rotateX(x, y + height), rotateY(x, y + height)
+        };
+    }
+
+    // Sizes are truncated to whole pixels and rotation is about the integer centre, as when drawing
+    public static Footprint of(Furniture furniture, int pixelsPerMeter) {
+        return of(furniture, furniture.getPosition() != null ? furniture.getPosition() : new Point(0, 0),
+                pixelsPerMeter);
+    }
+
+    // The footprint the furniture would have if it were moved to the position
+    public static Footprint of(Furniture furniture, Point position, int pixelsPerMeter) {
+        int width = (int) (furniture.getWidth() * pixelsPerMeter);
+        int height = (int) (furniture.getLength() * pixelsPerMeter);
+        return new Footprint(position.x, position.y, width, height,
+                position.x + width / 2, position.y + height / 2, furniture.getRotation());
+    }
+
+    // Whether the point lies on the furniture, rotation included
+    public boolean contains(double pointX, double pointY) {
+        if (pointX < minX || pointX > maxX || pointY < minY || pointY > maxY) {
+            return false;
+        }
+        // Undo the rotation, then test against the unrotated rectangle
+        double dx = pointX - centerX;
+        double dy = pointY - centerY;
+        double localX = centerX + dx * cos + dy * sin;
+        double localY = centerY - dx * sin + dy * cos;
+        return localX >= x && localX < x + width && localY >= y && localY < y + height;
+    }
+
+    /**
+     * Whether the two rotated rectangles share any area. Separating-axis test: two convex shapes
+     * are apart exactly when their projections are apart on one of their edge directions, which
+     * for two rectangles are the two axes of each.
+     */
+    public boolean overlaps(Footprint other) {
+        if (maxX <= other.minX || other.maxX <= minX || maxY <= other.minY || other.maxY <= minY) {
+            return false;
+        }
+        return !separatedAlong(cos, sin, other) && !separatedAlong(-sin, cos, other)
+                && !other.separatedAlong(other.cos, other.sin, this)
+                && !other.separatedAlong(-other.sin, other.cos, this);
+    }
+
+    private boolean separatedAlong(double axisX, double axisY, Footprint other) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double otherMin = Double.POSITIVE_INFINITY;
+        double otherMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < corners.length; i += 2) {
+            double projection = corners[i] * axisX + corners[i + 1] * axisY;
+            min = Math.min(min, projection);
+            max = Math.max(max, projection);
+            double otherProjection = other.corners[i] * axisX + other.corners[i + 1] * axisY;
+            otherMin = Math.min(otherMin, otherProjection);
+            otherMax = Math.max(otherMax, otherProjection);
+        }
+        return max <= otherMin + TOUCH_TOLERANCE || otherMax <= min + TOUCH_TOLERANCE;
+    }
+
+    private double rotateX(double pointX, double pointY) {
+        return centerX + (pointX - centerX) * cos - (pointY - centerY) * sin;
+    }
+
+    private double rotateY(double pointX, double pointY) {
+        return centerY + (pointX - centerX) * sin + (pointY - centerY) * cos;
+    }
+
+    // Smallest whole-pixel rectangle around the rotated footprint
+    public Rectangle getBounds() {
+        int left = (int) Math.floor(minX);
+        int top = (int) Math.floor(minY);
+        return new Rectangle(left, top, (int) Math.ceil(maxX) - left, (int) Math.ceil(maxY) - top);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+}
@@ -0,0 +1,265 @@
+package util.geometry;
+
+import model.Furniture;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the furniture of a design, for finding what lies under a point or inside an
+ * area without testing every piece. Each piece is entered in every cell its rotated footprint's bounding box
+ * touches, so a hit test only checks the pieces in one cell, and an overlap test only the pieces
+ * sharing a cell with it (the broad phase) before the exact separating-axis test of Footprint.
+ *
+ * The index does not see changes to the furniture itself: call update() after moving, rotating
+ * or resizing a piece, and rebuild() when the whole list is replaced.
+ */
+public class FurnitureIndex {
+    private final int pixelsPerMeter;
+    private final int cellSize;
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<Furniture, Entry> entries = new IdentityHashMap<>();
+    private List<Furniture> indexedList;
+    private int nextOrder;
+    private int queryStamp;
+
+    public FurnitureIndex(int pixelsPerMeter, int cellSize) {
+        this.pixelsPerMeter = pixelsPerMeter;
+        this.cellSize = cellSize;
+    }
+
+    // Index exactly these pieces, in drawing order
+    public void rebuild(List<Furniture> furnitureList) {
+        cells.clear();
+        entries.clear();
+        nextOrder = 0;
+        indexedList = furnitureList;
+        if (furnitureList != null) {
+            for (Furniture furniture : furnitureList) {
+                add(furniture);
+            }
+        }
+    }
+
+    // Whether the index was built from this list and still has as many pieces as it does
+    public boolean isIndexing(List<Furniture> furnitureList) {
+        return furnitureList == indexedList && furnitureList != null && furnitureList.size() == entries.size();
+    }
+
+    // A piece added later is drawn later, so it is on top of the pieces already indexed
+    public void add(Furniture furniture) {
+        if (entries.containsKey(furniture)) {
+            update(furniture);
+            return;
+        }
+        Entry entry = new Entry(furniture, nextOrder++);
+        entries.put(furniture, entry);
+        insert(entry);
+    }
+
+    public void remove(Furniture furniture) {
+        Entry entry = entries.remove(furniture);
+        if (entry != null) {
+            erase(entry);
+        }
+    }
+
+    // Re-enter a piece after its position, rotation or size changed
+    public void update(Furniture furniture) {
+        Entry entry = entries.get(furniture);
+        if (entry == null) {
+            return;
+        }
+        erase(entry);
+        entry.footprint = Footprint.of(furniture, pixelsPerMeter);
+        insert(entry);
+    }
+
+    // The topmost piece covering the point, or null if there is none
+    public Furniture findAt(double x, double y) {
+        List<Entry> cell = cells.get(key(Math.floorDiv((long) Math.floor(x), cellSize),
+                Math.floorDiv((long) Math.floor(y), cellSize)));
+        if (cell == null) {
+            return null;
+        }
+        Entry top = null;
+        for (Entry entry : cell) {
+            if ((top == null || entry.order > top.order) && entry.footprint.contains(x, y)) {
+                top = entry;
+            }
+        }
+        return top != null ? top.furniture : null;
+    }
+
+    /**
+     * Every piece whose rotated footprint's bounding box overlaps the area, in drawing order.
+     * Used to skip pieces outside the visible part of the view.
+     */
+    public List<Furniture> findIn(double minX, double minY, double maxX, double maxY) {
+        long minCellX = cell(minX);
+        long minCellY = cell(minY);
+        long maxCellX = cell(maxX);
+        long maxCellY = cell(maxY);
+
+        // Zoomed far out, the area has more cells than there are pieces; the indexed list is already in drawing order
+        if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > entries.size() && indexedList != null) {
+            List<Furniture> furniture = new ArrayList<>();
+            for (Furniture piece : indexedList) {
+                Entry entry = entries.get(piece);
+                if (entry != null && overlaps(entry.footprint, minX, minY, maxX, maxY)) {
+                    furniture.add(piece);
+                }
+            }
+            return furniture;
+        }
+
+        // A piece spanning several cells is found once per cell; the stamp keeps the first
+        List<Entry> found = new ArrayList<>();
+        int stamp = ++queryStamp;
+        for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+                List<Entry> cell = cells.get(key(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry entry : cell) {
+                    if (entry.stamp != stamp) {
+                        entry.stamp = stamp;
+                        if (overlaps(entry.footprint, minX, minY, maxX, maxY)) {
+                            found.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+
+        return inDrawingOrder(found);
+    }
+
+    private static List<Furniture> inDrawingOrder(List<Entry> found) {
+        found.sort(Comparator.comparingInt(entry -> entry.order));
+        List<Furniture> furniture = new ArrayList<>(found.size());
+        for (Entry entry : found) {
+            furniture.add(entry.furniture);
+        }
+        return furniture;
+    }
+
+    // Pieces other than the given one that a piece with this footprint would overlap, in drawing order
+    public List<Furniture> findOverlapping(Furniture furniture, Footprint footprint) {
+        List<Entry> found = new ArrayList<>();
+        int stamp = ++queryStamp;
+        for (long cellX = cell(footprint.getMinX()); cellX <= cell(footprint.getMaxX()); cellX++) {
+            for (long cellY = cell(footprint.getMinY()); cellY <= cell(footprint.getMaxY()); cellY++) {
+                List<Entry> cell = cells.get(key(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry entry : cell) {
+                    if (entry.stamp != stamp) {
+                        entry.stamp = stamp;
+                        if (entry.furniture != furniture && entry.footprint.overlaps(footprint)) {
+                            found.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+        return inDrawingOrder(found);
+    }
+
+    /**
+     * Every pair of indexed pieces that overlap. A pair sharing several cells is only tested in
+     * the cell at the top-left corner of the area their boxes have in common.
+     */
+    public List<Overlap> findAllOverlaps() {
+        List<Overlap> overlaps = new ArrayList<>();
+        for (Map.Entry<Long, List<Entry>> cellEntry : cells.entrySet()) {
+            List<Entry> cell = cellEntry.getValue();
+            long cellX = cellEntry.getKey() >> 32;
+            long cellY = cellEntry.getKey().intValue();
+            for (int i = 0; i < cell.size(); i++) {
+                Entry first = cell.get(i);
+                for (int j = i + 1; j < cell.size(); j++) {
+                    Entry second = cell.get(j);
+                    if (Math.max(first.minCellX, second.minCellX) != cellX
+                            || Math.max(first.minCellY, second.minCellY) != cellY
+                            || !first.footprint.overlaps(second.footprint)) {
+                        continue;
+                    }
+                    overlaps.add(first.order < second.order
+                            ? new Overlap(first.furniture, second.furniture)
+                            : new Overlap(second.furniture, first.furniture));
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static boolean overlaps(Footprint footprint, double minX, double minY, double maxX, double maxY) {
+        return footprint.getMaxX() >= minX && footprint.getMinX() <= maxX
+                && footprint.getMaxY() >= minY && footprint.getMinY() <= maxY;
+    }
+
+    private void insert(Entry entry) {
+        Footprint footprint = entry.footprint;
+        entry.minCellX = cell(footprint.getMinX());
+        entry.minCellY = cell(footprint.getMinY());
+        entry.maxCellX = cell(footprint.getMaxX());
+        entry.maxCellY = cell(footprint.getMaxY());
+        for (long cellX = entry.minCellX; cellX <= entry.maxCellX; cellX++) {
+            for (long cellY = entry.minCellY; cellY <= entry.maxCellY; cellY++) {
+                cells.computeIfAbsent(key(cellX, cellY), k -> new ArrayList<>(4)).add(entry);
+            }
+        }
+    }
+
+    private void erase(Entry entry) {
+        for (long cellX = entry.minCellX; cellX <= entry.maxCellX; cellX++) {
+            for (long cellY = entry.minCellY; cellY <= entry.maxCellY; cellY++) {
+                Long key = key(cellX, cellY);
+                List<Entry> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private long cell(double coordinate) {
+        return Math.floorDiv((long) Math.floor(coordinate), cellSize);
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+    }
+
+    private class Entry {
+        private final Furniture furniture;
+        private final int order;
+        private Footprint footprint;
+        private long minCellX;
+        private long minCellY;
+        private long maxCellX;
+        private long maxCellY;
+        private int stamp;
+
+        Entry(Furniture furniture, int order) {
+            this.furniture = furniture;
+            this.order = order;
+            this.footprint = Footprint.of(furniture, pixelsPerMeter);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package util.geometry;
+
+import model.Furniture;
+
+/**
+ * Two pieces of furniture whose footprints share some area; the first is drawn before the second.
+ */
+public final class Overlap {
+    private final Furniture first;
+    private final Furniture second;
+
+    public Overlap(Furniture first, Furniture second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public Furniture getFirst() {
+        return first;
+    }
+
+    public Furniture getSecond() {
+        return second;
+    }
+}
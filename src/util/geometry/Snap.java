@@ -0,0 +1,36 @@
+package util.geometry;
+
+/**
+ * Where snapping moves a dragged piece: the offset to add to its position on each axis, and the
+ * wall or furniture line it snapped to on that axis, to draw as a guide. The line is NaN when the
+ * axis snapped to the grid or not at all.
+ */
+public final class Snap {
+    private final double offsetX;
+    private final double offsetY;
+    private final double guideX;
+    private final double guideY;
+
+    public Snap(double offsetX, double offsetY, double guideX, double guideY) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.guideX = guideX;
+        this.guideY = guideY;
+    }
+
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    public double getGuideX() {
+        return guideX;
+    }
+
+    public double getGuideY() {
+        return guideY;
+    }
+}
@@ -0,0 +1,195 @@
+package util.geometry;
+
+import model.Furniture;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lines furniture can snap to in the 2D view: the walls, and the left edge, centre and right edge
+ * (top edge, middle and bottom edge) of the box around every piece's rotated footprint. Each axis
+ * keeps its lines in a sorted map, so the line nearest an edge is a floor and a ceiling lookup,
+ * O(log n), and moving a piece re-enters its six lines the same way.
+ *
+ * Like FurnitureIndex, the index does not see changes to the furniture itself: call update() after
+ * moving, rotating or resizing a piece, and rebuild() when the whole list is replaced.
+ */
+public class SnapIndex {
+    // Owner of the wall lines
+    private static final Object WALLS = new Object();
+
+    private final int pixelsPerMeter;
+
+    // Lines of constant x, and of constant y
+    private final Axis vertical = new Axis();
+    private final Axis horizontal = new Axis();
+
+    // The lines each piece was entered with, as left, centre, right, top, middle, bottom
+    private final Map<Furniture, double[]> entries = new IdentityHashMap<>();
+    private List<Furniture> indexedList;
+    private double roomWidth = Double.NaN;
+    private double roomLength = Double.NaN;
+
+    public SnapIndex(int pixelsPerMeter) {
+        this.pixelsPerMeter = pixelsPerMeter;
+    }
+
+    public void rebuild(List<Furniture> furnitureList) {
+        for (Furniture furniture : new ArrayList<>(entries.keySet())) {
+            remove(furniture);
+        }
+        indexedList = furnitureList;
+        if (furnitureList != null) {
+            for (Furniture furniture : furnitureList) {
+                add(furniture);
+            }
+        }
+    }
+
+    // Whether the index was built from this list and still has as many pieces as it does
+    public boolean isIndexing(List<Furniture> furnitureList) {
+        return furnitureList == indexedList && furnitureList != null && furnitureList.size() == entries.size();
+    }
+
+    // The inside faces of the walls of a room this many canvas units wide and long
+    public void setWalls(double width, double length) {
+        if (width == roomWidth && length == roomLength) {
+            return;
+        }
+        if (!Double.isNaN(roomWidth)) {
+            vertical.remove(0, WALLS);
+            vertical.remove(roomWidth, WALLS);
+            horizontal.remove(0, WALLS);
+            horizontal.remove(roomLength, WALLS);
+        }
+        roomWidth = width;
+        roomLength = length;
+        vertical.add(0, WALLS);
+        vertical.add(width, WALLS);
+        horizontal.add(0, WALLS);
+        horizontal.add(length, WALLS);
+    }
+
+    public void add(Furniture furniture) {
+        if (entries.containsKey(furniture)) {
+            update(furniture);
+            return;
+        }
+        Footprint footprint = Footprint.of(furniture, pixelsPerMeter);
+        double[] lines = {
+                footprint.getMinX(), (footprint.getMinX() + footprint.getMaxX()) / 2, footprint.getMaxX(),
+                footprint.getMinY(), (footprint.getMinY() + footprint.getMaxY()) / 2, footprint.getMaxY()
+        };
+        entries.put(furniture, lines);
+        for (int i = 0; i < 3; i++) {
+            vertical.add(lines[i], furniture);
+            horizontal.add(lines[i + 3], furniture);
+        }
+    }
+
+    public void remove(Furniture furniture) {
+        double[] lines = entries.remove(furniture);
+        if (lines == null) {
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            vertical.remove(lines[i], furniture);
+            horizontal.remove(lines[i + 3], furniture);
+        }
+    }
+
+    // Re-enter a piece after its position, rotation or size changed
+    public void update(Furniture furniture) {
+        if (entries.containsKey(furniture)) {
+            remove(furniture);
+            add(furniture);
+        }
+    }
+
+    /**
+     * How far to move a piece with this footprint so that one of its edges or its centre lies on
+     * the nearest wall or furniture line within the tolerance, on each axis. An axis with no line
+     * that close snaps the box's left or top edge to the grid instead, if gridSize is positive.
+     * The piece's own lines are skipped, since it is usually the one being dragged.
+     */
+    public Snap snap(Furniture furniture, Footprint footprint, double tolerance, int gridSize) {
+        double[] x = vertical.snap(footprint.getMinX(), footprint.getMaxX(), tolerance, gridSize, furniture);
+        double[] y = horizontal.snap(footprint.getMinY(), footprint.getMaxY(), tolerance, gridSize, furniture);
+        return new Snap(x[0], y[0], x[1], y[1]);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Sorted lines along one axis, with the pieces (or walls) that have a line there
+    private static class Axis {
+        private final TreeMap<Double, List<Object>> lines = new TreeMap<>();
+
+        void add(double line, Object owner) {
+            lines.computeIfAbsent(line, k -> new ArrayList<>(2)).add(owner);
+        }
+
+        void remove(double line, Object owner) {
+            List<Object> owners = lines.get(line);
+            if (owners != null) {
+                owners.remove(owner);
+                if (owners.isEmpty()) {
+                    lines.remove(line);
+                }
+            }
+        }
+
+        // Offset to the closest line for the box's edges and centre, and that line; NaN for a grid snap
+        double[] snap(double min, double max, double tolerance, int gridSize, Object ignored) {
+            double[] edges = {min, (min + max) / 2, max};
+            double bestOffset = Double.NaN;
+            double bestLine = Double.NaN;
+            for (double edge : edges) {
+                double line = nearest(edge, tolerance, ignored);
+                if (!Double.isNaN(line) && (Double.isNaN(bestLine) || Math.abs(line - edge) < Math.abs(bestOffset))) {
+                    bestOffset = line - edge;
+                    bestLine = line;
+                }
+            }
+            if (!Double.isNaN(bestLine)) {
+                return new double[] {bestOffset, bestLine};
+            }
+            double gridOffset = gridSize > 0 ? Math.round(min / gridSize) * (double) gridSize - min : 0;
+            return new double[] {gridOffset, Double.NaN};
+        }
+
+        // The line closest to the value within the tolerance that belongs to something other than ignored
+        private double nearest(double value, double tolerance, Object ignored) {
+            Map.Entry<Double, List<Object>> above = lines.ceilingEntry(value);
+            while (above != null && above.getKey() - value <= tolerance && ownedOnlyBy(above.getValue(), ignored)) {
+                above = lines.higherEntry(above.getKey());
+            }
+            Map.Entry<Double, List<Object>> below = lines.floorEntry(value);
+            while (below != null && value - below.getKey() <= tolerance && ownedOnlyBy(below.getValue(), ignored)) {
+                below = lines.lowerEntry(below.getKey());
+            }
+            double up = above != null && above.getKey() - value <= tolerance ? above.getKey() : Double.NaN;
+            double down = below != null && value - below.getKey() <= tolerance ? below.getKey() : Double.NaN;
+            if (Double.isNaN(up)) {
+                return down;
+            }
+            if (Double.isNaN(down)) {
+                return up;
+            }
+            return up - value < value - down ? up : down;
+        }
+
+        private static boolean ownedOnlyBy(List<Object> owners, Object ignored) {
+            for (Object owner : owners) {
+                if (owner != ignored) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
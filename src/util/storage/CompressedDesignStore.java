@@ -0,0 +1,654 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Design store that packs records into independently deflated blocks.
+ * New records are appended uncompressed to a tail log and fsynced, as in DesignLog. Once the
+ * tail holds BLOCK_TARGET_SIZE bytes, its latest record per design is compressed into one block
+ * at the end of the segment file and the tail is cleared.
+ *
+ * Each block starts with an uncompressed directory of the records it holds, so opening the store
+ * reads block headers only, and reading one design inflates only the block that holds it.
+ *
+ * Block layout: magic (4) + entry count (4) + raw length (4) + compressed length (4) + CRC32 (4),
+ * then per entry id (4) + type (1) + offset in block (4) + length (4) + owner hash (4),
+ * then the deflated records. The checksum covers the directory and the compressed bytes.
+ *
+ * Blocks are never changed once written, so a design saved again or deleted leaves a dead copy
+ * behind. Each block counts the bytes of its records that are still live; once at least
+ * MIN_COMPACTION_GARBAGE bytes, and at least half of all block bytes, are dead, the live records
+ * are repacked into fresh blocks in a new segment file that replaces the old one.
+ *
+ * The index lives in memory, so only one process can have the store open at a time.
+ */
+public class CompressedDesignStore implements DesignStore {
+    private static final String SEGMENT_FILE = "segments.dat";
+    private static final String TAIL_FILE = "tail.log";
+    private static final String LOCK_FILE = "store.lock";
+    private static final int SEGMENT_MAGIC = 0x52444353; // "RDCS"
+    private static final int TAIL_MAGIC = 0x52444354; // "RDCT"
+    private static final int BLOCK_MAGIC = 0x52444342; // "RDCB"
+
+    private static final int BLOCK_HEADER_SIZE = 20;
+    private static final int ENTRY_SIZE = 17;
+
+    // Raw bytes per block: larger blocks compress better, smaller ones are cheaper to read
+    private static final int BLOCK_TARGET_SIZE = 16 * 1024;
+
+    // Repack once at least this many raw bytes, and at least half of all block bytes, are dead
+    private static final long MIN_COMPACTION_GARBAGE = 256 * 1024;
+
+    private final File directory;
+    private final ProcessLock processLock;
+    private FileChannel segments;
+    private FileChannel tail;
+
+    // Latest location of every live design, in id order
+    private final Map<Integer, Entry> index = new TreeMap<>();
+
+    // Designs changed since the last block was written; false marks a delete
+    private final Map<Integer, Boolean> tailChanges = new LinkedHashMap<>();
+    private int maxId = 0;
+
+    // Raw bytes of every record in the segment file's blocks, and of those still current
+    private long blockBytes = 0;
+    private long liveBlockBytes = 0;
+    private int compactionCount = 0;
+
+    // The most recently inflated block, so reading several designs from one block in a row
+    // inflates it once. Blocks hold records in the order they were flushed, not in id order.
+    private Block cachedBlock;
+    private byte[] cachedContents;
+
+    private CompressedDesignStore(File directory, ProcessLock processLock) {
+        this.directory = directory;
+        this.processLock = processLock;
+    }
+
+    public static CompressedDesignStore open(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create design directory " + directory);
+        }
+        ProcessLock processLock = ProcessLock.open(new File(directory, LOCK_FILE));
+        CompressedDesignStore store = new CompressedDesignStore(directory, processLock);
+        try {
+            if (!processLock.claim()) {
+                throw new IOException("Design directory " + directory + " is in use by another process");
+            }
+            store.segments = openFile(new File(directory, SEGMENT_FILE), SEGMENT_MAGIC);
+            store.tail = openFile(new File(directory, TAIL_FILE), TAIL_MAGIC);
+            store.recover();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            if (store.segments != null) {
+                store.segments.close();
+            }
+            if (store.tail != null) {
+                store.tail.close();
+            }
+            processLock.close();
+            throw e;
+        }
+    }
+
+    private static FileChannel openFile(File file, int magic) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            RecordFormat.writeFileHeader(channel, magic);
+            channel.force(true);
+        } else if (RecordFormat.readFileVersion(channel, magic) != RecordFormat.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported design file format: " + file);
+        }
+        return channel;
+    }
+
+    // Read every block directory, then replay the tail on top
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+        long size = segments.size();
+        long position = RecordFormat.FILE_HEADER_SIZE;
+        int blockCount = 0;
+
+        Block block;
+        while ((block = readBlockHeader(position, size)) != null) {
+            ByteBuffer directoryBytes = ByteBuffer.allocate(block.entryCount * ENTRY_SIZE);
+            RecordFormat.readFully(segments, directoryBytes, block.position + BLOCK_HEADER_SIZE);
+            directoryBytes.flip();
+            for (int i = 0; i < block.entryCount; i++) {
+                int id = directoryBytes.getInt();
+                byte type = directoryBytes.get();
+                int offset = directoryBytes.getInt();
+                int length = directoryBytes.getInt();
+                int ownerHash = directoryBytes.getInt();
+                if (type == RecordFormat.PUT) {
+                    setEntry(id, new Entry(block, offset, length, ownerHash));
+                } else {
+                    removeEntry(id);
+                }
+                maxId = Math.max(maxId, id);
+            }
+            blockBytes += block.rawLength;
+            position = block.end();
+            blockCount++;
+        }
+        if (position < size) {
+            System.err.println("Discarding " + (size - position) + " bytes of incomplete blocks from " + SEGMENT_FILE);
+            segments.truncate(position);
+            segments.force(true);
+        }
+
+        int replayed = 0;
+        long tailSize = tail.size();
+        long tailPosition = RecordFormat.FILE_HEADER_SIZE;
+        RecordFormat.Record record;
+        while ((record = RecordFormat.read(tail, tailPosition, tailSize)) != null) {
+            if (record.type == RecordFormat.PUT) {
+                String owner = DesignCodec.decodeSummary(record.payload).getUserEmail();
+                setEntry(record.id, new Entry(null, record.payloadOffset(), record.payload.length, ownerHash(owner)));
+                tailChanges.put(record.id, true);
+            } else {
+                removeEntry(record.id);
+                tailChanges.put(record.id, false);
+            }
+            maxId = Math.max(maxId, record.id);
+            tailPosition = record.end();
+            replayed++;
+        }
+        RecordFormat.truncateTornTail(tail, tailPosition, TAIL_FILE);
+
+        System.out.printf("[CompressedDesignStore] Opened %d blocks (%d of %d bytes live) and replayed %d tail records in %.1f ms%n",
+                blockCount, liveBlockBytes, blockBytes, replayed, (System.nanoTime() - started) / 1e6);
+    }
+
+    /**
+     * Header of the block at the given position, or null if there is no complete block there.
+     * Only the last block is checksummed on open, since a crash can only tear the end of the file;
+     * other blocks are checked when they are inflated.
+     */
+    private Block readBlockHeader(long position, long size) throws IOException {
+        if (position + BLOCK_HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        RecordFormat.readFully(segments, header, position);
+        header.flip();
+
+        int magic = header.getInt();
+        int entryCount = header.getInt();
+        int rawLength = header.getInt();
+        int compressedLength = header.getInt();
+        int crc = header.getInt();
+        if (magic != BLOCK_MAGIC || entryCount < 0 || rawLength < 0 || compressedLength < 0) {
+            return null;
+        }
+
+        Block block = new Block(position, entryCount, rawLength, compressedLength, crc);
+        if (block.end() > size || (block.end() == size && checksum(readStoredBlock(block)) != block.crc)) {
+            return null;
+        }
+        return block;
+    }
+
+    @Override
+    public synchronized List<Design> readAll() throws IOException {
+        List<Design> designs = new ArrayList<>(index.size());
+        for (Entry entry : index.values()) {
+            designs.add(DesignCodec.decode(readPayload(entry)));
+        }
+        return designs;
+    }
+
+    @Override
+    public synchronized int[] ids() {
+        return index.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public synchronized Design read(int id) throws IOException {
+        Entry entry = index.get(id);
+        return entry != null ? DesignCodec.decode(readPayload(entry)) : null;
+    }
+
+    @Override
+    public synchronized List<Design> readByOwner(String userEmail) throws IOException {
+        List<Design> designs = new ArrayList<>();
+        int hash = ownerHash(userEmail);
+        for (Entry entry : index.values()) {
+            if (entry.ownerHash == hash) {
+                Design design = DesignCodec.decode(readPayload(entry));
+                // Different emails can share a hash
+                if (userEmail.equals(design.getUserEmail())) {
+                    designs.add(design);
+                }
+            }
+        }
+        return designs;
+    }
+
+    @Override
+    public synchronized List<DesignSummary> readSummariesByOwner(String userEmail) throws IOException {
+        List<DesignSummary> summaries = new ArrayList<>();
+        int hash = ownerHash(userEmail);
+        for (Entry entry : index.values()) {
+            if (entry.ownerHash == hash) {
+                DesignSummary summary = DesignCodec.decodeSummary(readPayload(entry));
+                if (userEmail.equals(summary.getUserEmail())) {
+                    summaries.add(summary);
+                }
+            }
+        }
+        return summaries;
+    }
+
+    // Save the design if it is based on the stored version; see DesignLog.put
+    @Override
+    public synchronized void put(Design design) throws IOException {
+        Entry stored = index.get(design.getId());
+        int storedVersion = stored != null ? DesignCodec.decodeVersion(readPayload(stored)) : 0;
+        DesignConflictException.checkAndAdvance(design, storedVersion);
+
+        byte[] payload;
+        long offset;
+        try {
+            payload = DesignCodec.encode(design);
+            offset = appendToTail(RecordFormat.PUT, design.getId(), payload);
+        } catch (IOException | RuntimeException e) {
+            design.setVersion(storedVersion);
+            throw e;
+        }
+
+        setEntry(design.getId(), new Entry(null, offset + RecordFormat.HEADER_SIZE, payload.length,
+                ownerHash(design.getUserEmail())));
+        tailChanges.put(design.getId(), true);
+        maxId = Math.max(maxId, design.getId());
+        maybeWriteBlock();
+    }
+
+    @Override
+    public synchronized void delete(int id) throws IOException {
+        if (!index.containsKey(id)) {
+            return;
+        }
+        appendToTail(RecordFormat.DELETE, id, new byte[0]);
+
+        removeEntry(id);
+        tailChanges.put(id, false);
+        maybeWriteBlock();
+    }
+
+    @Override
+    public synchronized boolean contains(int id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized int getMaxId() {
+        return maxId;
+    }
+
+    // Bytes on disk across the segment and tail files
+    public synchronized long getStoredBytes() throws IOException {
+        return segments.size() + tail.size();
+    }
+
+    // Raw bytes of block records that were saved over or deleted since
+    public synchronized long getGarbageBytes() {
+        return blockBytes - liveBlockBytes;
+    }
+
+    public synchronized boolean needsCompaction() {
+        long garbage = getGarbageBytes();
+        return garbage >= MIN_COMPACTION_GARBAGE && garbage * 2 >= blockBytes;
+    }
+
+    public synchronized int getCompactionCount() {
+        return compactionCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // Compress whatever is left so the next open starts with an empty tail
+        try {
+            if (!tailChanges.isEmpty()) {
+                writeBlock();
+            }
+            segments.close();
+            tail.close();
+        } finally {
+            processLock.close();
+        }
+    }
+
+    private long appendToTail(byte type, int id, byte[] payload) throws IOException {
+        long offset = tail.size();
+        RecordFormat.writeFully(tail, RecordFormat.frame(type, id, payload), offset);
+        tail.force(false);
+        return offset;
+    }
+
+    private void maybeWriteBlock() throws IOException {
+        if (tail.size() - RecordFormat.FILE_HEADER_SIZE >= BLOCK_TARGET_SIZE) {
+            writeBlock();
+            if (needsCompaction()) {
+                compact();
+            }
+        }
+    }
+
+    // Point the design at a new record, and stop counting the one it replaces as live
+    private void setEntry(int id, Entry entry) {
+        release(index.put(id, entry));
+        if (entry.block != null) {
+            entry.block.liveBytes += entry.length;
+            liveBlockBytes += entry.length;
+        }
+    }
+
+    private void removeEntry(int id) {
+        release(index.remove(id));
+    }
+
+    private void release(Entry entry) {
+        if (entry != null && entry.block != null) {
+            entry.block.liveBytes -= entry.length;
+            liveBlockBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Compress the latest tail record of each changed design into a new block, then clear the tail.
+     * If the process dies in between, the tail is replayed over the new block on the next open,
+     * which leaves the same result.
+     */
+    private void writeBlock() throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(BLOCK_TARGET_SIZE);
+        ByteBuffer directoryBytes = ByteBuffer.allocate(tailChanges.size() * ENTRY_SIZE);
+        Map<Integer, Integer> packedOffsets = new LinkedHashMap<>();
+
+        for (Map.Entry<Integer, Boolean> change : tailChanges.entrySet()) {
+            int id = change.getKey();
+            Entry entry = index.get(id);
+            if (change.getValue() && entry != null && entry.block == null) {
+                byte[] payload = readPayload(entry);
+                directoryBytes.putInt(id).put(RecordFormat.PUT).putInt(contents.size())
+                        .putInt(payload.length).putInt(entry.ownerHash);
+                packedOffsets.put(id, contents.size());
+                contents.write(payload);
+            } else {
+                directoryBytes.putInt(id).put(RecordFormat.DELETE).putInt(0).putInt(0).putInt(0);
+            }
+        }
+
+        byte[] raw = contents.toByteArray();
+        Block block = appendBlock(segments, segments.size(), tailChanges.size(), directoryBytes, raw);
+        segments.force(false);
+        blockBytes += block.rawLength;
+
+        // Point the index at the block only once it is durable
+        for (Map.Entry<Integer, Integer> packed : packedOffsets.entrySet()) {
+            Entry entry = index.get(packed.getKey());
+            setEntry(packed.getKey(), new Entry(block, packed.getValue(), entry.length, entry.ownerHash));
+        }
+        cachedBlock = block;
+        cachedContents = raw;
+
+        tail.truncate(RecordFormat.FILE_HEADER_SIZE);
+        tail.force(true);
+        tailChanges.clear();
+    }
+
+    // Deflate the records and write them as a block with the given directory at the position
+    private static Block appendBlock(FileChannel channel, long position, int entryCount, ByteBuffer directoryBytes,
+                                     byte[] raw) throws IOException {
+        byte[] compressed = deflate(raw);
+        CRC32 crc = new CRC32();
+        crc.update(directoryBytes.array(), 0, entryCount * ENTRY_SIZE);
+        crc.update(compressed);
+
+        Block block = new Block(position, entryCount, raw.length, compressed.length, (int) crc.getValue());
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        header.putInt(BLOCK_MAGIC).putInt(block.entryCount).putInt(block.rawLength)
+                .putInt(block.compressedLength).putInt(block.crc);
+        header.flip();
+        directoryBytes.flip();
+
+        RecordFormat.writeFully(channel, header, position);
+        RecordFormat.writeFully(channel, directoryBytes, position + BLOCK_HEADER_SIZE);
+        RecordFormat.writeFully(channel, ByteBuffer.wrap(compressed), block.dataPosition());
+        return block;
+    }
+
+    /**
+     * Repack the live records of the segment file into fresh blocks and drop the dead ones.
+     * Blocks with nothing live are skipped without being inflated; the others are read in file
+     * order, so each is inflated once. The new file is fsynced and renamed over the old one, so a
+     * crash leaves one complete segment file, and the tail is replayed over it either way.
+     */
+    public synchronized void compact() throws IOException {
+        long started = System.nanoTime();
+        long oldSize = segments.size();
+
+        // Live block records grouped by block, in file order
+        List<Map.Entry<Integer, Entry>> live = new ArrayList<>();
+        for (Map.Entry<Integer, Entry> entry : index.entrySet()) {
+            if (entry.getValue().block != null) {
+                live.add(entry);
+            }
+        }
+        live.sort((a, b) -> a.getValue().block != b.getValue().block
+                ? Long.compare(a.getValue().block.position, b.getValue().block.position)
+                : Long.compare(a.getValue().offset, b.getValue().offset));
+
+        File segmentFile = new File(directory, SEGMENT_FILE);
+        File target = File.createTempFile(SEGMENT_FILE + ".", ".compact", directory);
+        FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        boolean swapped = false;
+        try {
+            RecordFormat.writeFileHeader(out, SEGMENT_MAGIC);
+            long position = RecordFormat.FILE_HEADER_SIZE;
+            Map<Integer, Entry> moved = new LinkedHashMap<>();
+            long movedBytes = 0;
+
+            ByteArrayOutputStream contents = new ByteArrayOutputStream(BLOCK_TARGET_SIZE);
+            List<Map.Entry<Integer, Entry>> batch = new ArrayList<>();
+            for (int i = 0; i < live.size(); i++) {
+                Map.Entry<Integer, Entry> record = live.get(i);
+                batch.add(record);
+                contents.write(readPayload(record.getValue()));
+                if (contents.size() < BLOCK_TARGET_SIZE && i < live.size() - 1) {
+                    continue;
+                }
+
+                ByteBuffer directoryBytes = ByteBuffer.allocate(batch.size() * ENTRY_SIZE);
+                int[] offsets = new int[batch.size()];
+                int blockOffset = 0;
+                for (int j = 0; j < batch.size(); j++) {
+                    Entry entry = batch.get(j).getValue();
+                    offsets[j] = blockOffset;
+                    directoryBytes.putInt(batch.get(j).getKey()).put(RecordFormat.PUT).putInt(blockOffset)
+                            .putInt(entry.length).putInt(entry.ownerHash);
+                    blockOffset += entry.length;
+                }
+                Block block = appendBlock(out, position, batch.size(), directoryBytes, contents.toByteArray());
+                for (int j = 0; j < batch.size(); j++) {
+                    Entry entry = batch.get(j).getValue();
+                    moved.put(batch.get(j).getKey(), new Entry(block, offsets[j], entry.length, entry.ownerHash));
+                    block.liveBytes += entry.length;
+                }
+                movedBytes += block.rawLength;
+                position = block.end();
+                contents.reset();
+                batch.clear();
+            }
+            out.force(true);
+
+            AtomicFiles.replace(target, segmentFile);
+            swapped = true;
+            segments.close();
+            segments = out;
+
+            index.putAll(moved);
+            blockBytes = movedBytes;
+            liveBlockBytes = movedBytes;
+            cachedBlock = null;
+            cachedContents = null;
+            compactionCount++;
+
+            System.out.printf("[CompressedDesignStore] Compacted %s from %d to %d bytes in %.1f ms%n",
+                    SEGMENT_FILE, oldSize, position, (System.nanoTime() - started) / 1e6);
+        } finally {
+            if (!swapped) {
+                out.close();
+                target.delete();
+            }
+        }
+    }
+
+    private byte[] readPayload(Entry entry) throws IOException {
+        if (entry.block == null) {
+            ByteBuffer payload = ByteBuffer.allocate(entry.length);
+            RecordFormat.readFully(tail, payload, entry.offset);
+            return payload.array();
+        }
+
+        byte[] contents = inflate(entry.block);
+        byte[] payload = new byte[entry.length];
+        System.arraycopy(contents, (int) entry.offset, payload, 0, entry.length);
+        return payload;
+    }
+
+    private byte[] inflate(Block block) throws IOException {
+        if (block == cachedBlock) {
+            return cachedContents;
+        }
+
+        byte[] stored = readStoredBlock(block);
+        if (checksum(stored) != block.crc) {
+            throw new IOException("Corrupt design block at offset " + block.position);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, block.entryCount * ENTRY_SIZE, block.compressedLength);
+            byte[] contents = new byte[block.rawLength];
+            int inflated = 0;
+            while (inflated < contents.length) {
+                int n = inflater.inflate(contents, inflated, contents.length - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated design block at offset " + block.position);
+                }
+                inflated += n;
+            }
+            cachedBlock = block;
+            cachedContents = contents;
+            return contents;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt design block at offset " + block.position, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Directory and compressed bytes of a block, as covered by its checksum
+    private byte[] readStoredBlock(Block block) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(block.entryCount * ENTRY_SIZE + block.compressedLength);
+        RecordFormat.readFully(segments, stored, block.position + BLOCK_HEADER_SIZE);
+        return stored.array();
+    }
+
+    private static int checksum(byte[] stored) {
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int ownerHash(String userEmail) {
+        return userEmail != null ? userEmail.hashCode() : 0;
+    }
+
+    // Where one compressed block sits in the segment file
+    private static class Block {
+        final long position;
+        final int entryCount;
+        final int rawLength;
+        final int compressedLength;
+        final int crc;
+
+        // Raw bytes of the records in this block that are still the current copy of their design
+        int liveBytes;
+
+        Block(long position, int entryCount, int rawLength, int compressedLength, int crc) {
+            this.position = position;
+            this.entryCount = entryCount;
+            this.rawLength = rawLength;
+            this.compressedLength = compressedLength;
+            this.crc = crc;
+        }
+
+        long dataPosition() {
+            return position + BLOCK_HEADER_SIZE + (long) entryCount * ENTRY_SIZE;
+        }
+
+        long end() {
+            return dataPosition() + compressedLength;
+        }
+    }
+
+    // A design's record: inside a block, or still uncompressed in the tail when block is null
+    private static class Entry {
+        final Block block;
+        final long offset;
+        final int length;
+        final int ownerHash;
+
+        Entry(Block block, long offset, int length, int ownerHash) {
+            this.block = block;
+            this.offset = offset;
+            this.length = length;
+            this.ownerHash = ownerHash;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package util.storage;
+
+import model.Design;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip archive of designs, for moving them between machines.
+ * Each design is its own entry, designs/<id>.rdd, holding its DesignCodec encoding, so export
+ * and import stream one design at a time and memory use does not grow with the archive.
+ *
+ * Import decodes entries on a pool of threads while the archive is still being read, keeping at
+ * most a few batches in flight, and stores them in batches through DesignStore.putAll.
+ */
+public final class DesignArchive {
+    private static final String INFO_ENTRY = "archive-info";
+    private static final String DESIGN_PREFIX = "designs/";
+    private static final String DESIGN_SUFFIX = ".rdd";
+    private static final int FORMAT = 1;
+
+    // Designs handed to the store at once
+    private static final int IMPORT_BATCH_SIZE = 256;
+
+    private DesignArchive() {
+    }
+
+    // Supplies the ids imported designs are stored under
+    public interface IdSource {
+        int next() throws IOException;
+    }
+
+    /**
+     * Write the designs with the given ids to the archive, skipping any deleted in the meantime.
+     * The stream is finished but left open. Returns the number of designs written.
+     */
+    public static int export(DesignStore store, int[] ids, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out));
+        zip.putNextEntry(new ZipEntry(INFO_ENTRY));
+        zip.write(("RoomDesigner design archive\nformat=" + FORMAT + "\n").getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+
+        int written = 0;
+        for (int id : ids) {
+            Design design = store.read(id);
+            if (design == null) {
+                continue;
+            }
+            ZipEntry entry = new ZipEntry(DESIGN_PREFIX + id + DESIGN_SUFFIX);
+            if (design.getCreationDate() != null) {
+                entry.setTime(design.getCreationDate().getTime());
+            }
+            zip.putNextEntry(entry);
+            zip.write(DesignCodec.encode(design));
+            zip.closeEntry();
+            written++;
+        }
+        zip.finish();
+        zip.flush();
+        return written;
+    }
+
+    /**
+     * Store every design in the archive, decoding them on the given number of threads.
+     * Ids only mean something on the machine that assigned them, so every imported design gets
+     * a new id from newIds, and starts over at version 1.
+     */
+    public static ImportResult importArchive(InputStream in, DesignStore store, int threads, IdSource newIds)
+            throws IOException {
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "archive-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int maxInFlight = Math.max(IMPORT_BATCH_SIZE, threads * 64);
+
+        ImportResult result = new ImportResult();
+        Deque<Future<Design>> inFlight = new ArrayDeque<>();
+        List<Design> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        try {
+            ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in));
+            boolean sawInfo = false;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (name.equals(INFO_ENTRY)) {
+                    checkInfo(new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+                    sawInfo = true;
+                    continue;
+                }
+                if (!sawInfo) {
+                    throw new IOException("Not a design archive: first entry is " + name);
+                }
+                if (!name.startsWith(DESIGN_PREFIX) || !name.endsWith(DESIGN_SUFFIX)) {
+                    continue;
+                }
+
+                byte[] data = zip.readAllBytes();
+                inFlight.add(decoders.submit(() -> decode(name, data)));
+                if (inFlight.size() >= maxInFlight) {
+                    collect(inFlight.poll(), batch, store, newIds, result);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                collect(inFlight.poll(), batch, store, newIds, result);
+            }
+            if (!batch.isEmpty()) {
+                store(batch, store, newIds, result);
+            }
+        } finally {
+            decoders.shutdownNow();
+        }
+        return result;
+    }
+
+    private static void checkInfo(String info) throws IOException {
+        if (!info.contains("format=" + FORMAT + "\n")) {
+            throw new IOException("Unsupported design archive format: " + info.trim());
+        }
+    }
+
+    private static Design decode(String name, byte[] data) throws IOException {
+        try {
+            return DesignCodec.decode(data);
+        } catch (IOException e) {
+            throw new IOException("Corrupt archive entry " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Wait for the oldest decode, keeping archive order, and store a batch once it is full
+    private static void collect(Future<Design> decoded, List<Design> batch, DesignStore store, IdSource newIds,
+                                ImportResult result) throws IOException {
+        try {
+            batch.add(decoded.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+        if (batch.size() >= IMPORT_BATCH_SIZE) {
+            store(batch, store, newIds, result);
+        }
+    }
+
+    private static void store(List<Design> batch, DesignStore store, IdSource newIds, ImportResult result)
+            throws IOException {
+        for (Design design : batch) {
+            design.setId(newIds.next());
+            design.setVersion(0);
+        }
+        store.putAll(batch);
+
+        for (Design design : batch) {
+            result.imported++;
+            result.idsByOwner.computeIfAbsent(design.getUserEmail(), email -> new ArrayList<>()).add(design.getId());
+        }
+        batch.clear();
+    }
+
+    // What an import stored
+    public static class ImportResult {
+        private int imported;
+        private final Map<String, List<Integer>> idsByOwner = new LinkedHashMap<>();
+
+        public int getImported() {
+            return imported;
+        }
+
+        // Ids the imported designs were stored under, by owner email
+        public Map<String, List<Integer>> getIdsByOwner() {
+            return Collections.unmodifiableMap(idsByOwner);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+import model.Furniture;
+import model.Room;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.*;
+import java.util.Date;
+
+/**
+ * Hand-written binary format for designs.
+ * Only primitives are written: colors as packed ARGB ints, positions as two ints,
+ * dates as epoch millis and enums as their ordinal. The first byte is the format version.
+ * Name, owner, date, room and furniture count come before the furniture itself, so a
+ * DesignSummary can be read from the start of a record without decoding the rest.
+ */
+public final class DesignCodec {
+    public static final byte VERSION = 1;
+
+    // Enough of a record to reach the furniture count unless the name or email is unusually long
+    static final int SUMMARY_PREFIX_SIZE = 256;
+
+    // Presence flags for nullable fields
+    private static final int HAS_NAME = 1;
+    private static final int HAS_EMAIL = 1 << 1;
+    private static final int HAS_ROOM = 1 << 2;
+    private static final int HAS_COLOR = 1;
+    private static final int HAS_POSITION = 1 << 1;
+
+    private DesignCodec() {
+    }
+
+    public static byte[] encode(Design design) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + design.getFurnitureList().size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, design);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Design decode(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Read only the summary fields at the start of an encoded design.
+     * The data may be a prefix of the record as long as it reaches the furniture count;
+     * an EOFException means more of the record is needed.
+     */
+    public static DesignSummary decodeSummary(byte[] data) throws IOException {
+        return readSummary(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    // Summary from the first SUMMARY_PREFIX_SIZE bytes of a record, or null if the whole record is needed
+    static DesignSummary decodeSummaryPrefix(byte[] prefix) throws IOException {
+        try {
+            return readSummary(new DataInputStream(new ByteArrayInputStream(prefix)));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Deep copy through the codec, independent of the original's furniture and room objects
+    public static Design copy(Design design) throws IOException {
+        return decode(encode(design));
+    }
+
+    public static void write(DataOutput out, Design design) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(design.getId());
+        out.writeInt(design.getVersion());
+
+        int flags = (design.getName() != null ? HAS_NAME : 0)
+                | (design.getUserEmail() != null ? HAS_EMAIL : 0)
+                | (design.getRoom() != null ? HAS_ROOM : 0);
+        out.writeByte(flags);
+        if (design.getName() != null) {
+            out.writeUTF(design.getName());
+        }
+        if (design.getUserEmail() != null) {
+            out.writeUTF(design.getUserEmail());
+        }
+        out.writeLong(design.getCreationDate() != null ? design.getCreationDate().getTime() : 0L);
+        if (design.getRoom() != null) {
+            writeRoom(out, design.getRoom());
+        }
+
+        out.writeInt(design.getFurnitureList().size());
+        for (Furniture furniture : design.getFurnitureList()) {
+            writeFurniture(out, furniture);
+        }
+    }
+
+    public static Design read(DataInput in) throws IOException {
+        readFormat(in);
+        int id = in.readInt();
+        int version = in.readInt();
+        int flags = in.readUnsignedByte();
+        String name = (flags & HAS_NAME) != 0 ? in.readUTF() : null;
+        String userEmail = (flags & HAS_EMAIL) != 0 ? in.readUTF() : null;
+        long creationTime = in.readLong();
+        Room room = (flags & HAS_ROOM) != 0 ? readRoom(in) : null;
+
+        Design design = new Design(id, name, userEmail, room);
+        design.setCreationDate(new Date(creationTime));
+        design.setVersion(version);
+
+        int furnitureCount = in.readInt();
+        for (int i = 0; i < furnitureCount; i++) {
+            design.addFurniture(readFurniture(in));
+        }
+        return design;
+    }
+
+    // Read the fields ahead of the furniture list and stop there
+    public static DesignSummary readSummary(DataInput in) throws IOException {
+        readFormat(in);
+        int id = in.readInt();
+        // Design version
+        in.readInt();
+        int flags = in.readUnsignedByte();
+        String name = (flags & HAS_NAME) != 0 ? in.readUTF() : null;
+        String userEmail = (flags & HAS_EMAIL) != 0 ? in.readUTF() : null;
+        long creationTime = in.readLong();
+        Room room = (flags & HAS_ROOM) != 0 ? readRoom(in) : null;
+        int furnitureCount = in.readInt();
+
+        return new DesignSummary(id, name, userEmail, new Date(creationTime), room, furnitureCount);
+    }
+
+    // Saved version of an encoded design, read from the start of the record
+    static int decodeVersion(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        readFormat(in);
+        in.readInt();
+        return in.readInt();
+    }
+
+    // The parts of a design that DesignHistory stores as separate chunks
+
+    // Name, owner and creation date
+    static byte[] encodeMetadata(Design design) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte((design.getName() != null ? HAS_NAME : 0) | (design.getUserEmail() != null ? HAS_EMAIL : 0));
+            if (design.getName() != null) {
+                out.writeUTF(design.getName());
+            }
+            if (design.getUserEmail() != null) {
+                out.writeUTF(design.getUserEmail());
+            }
+            out.writeLong(design.getCreationDate() != null ? design.getCreationDate().getTime() : 0L);
+        }
+        return bytes.toByteArray();
+    }
+
+    // A design with the given id and metadata, and no room or furniture yet
+    static Design decodeMetadata(int id, byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int flags = in.readUnsignedByte();
+        String name = (flags & HAS_NAME) != 0 ? in.readUTF() : null;
+        String userEmail = (flags & HAS_EMAIL) != 0 ? in.readUTF() : null;
+        Design design = new Design(id, name, userEmail, null);
+        design.setCreationDate(new Date(in.readLong()));
+        return design;
+    }
+
+    static byte[] encodeRoom(Room room) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(40);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRoom(out, room);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Room decodeRoom(byte[] data) throws IOException {
+        return readRoom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    static byte[] encodeFurniture(Furniture furniture) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeFurniture(out, furniture);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Furniture decodeFurniture(byte[] data) throws IOException {
+        return readFurniture(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private static void readFormat(DataInput in) throws IOException {
+        byte format = in.readByte();
+        if (format != VERSION) {
+            throw new IOException("Unsupported design format version " + format);
+        }
+    }
+
+    private static void writeRoom(DataOutput out, Room room) throws IOException {
+        out.writeDouble(room.getWidth());
+        out.writeDouble(room.getLength());
+        out.writeDouble(room.getHeight());
+        out.writeByte(room.getShape().ordinal());
+        out.writeInt(room.getFloorColor().getRGB());
+        out.writeInt(room.getWallColor().getRGB());
+    }
+
+    private static Room readRoom(DataInput in) throws IOException {
+        double width = in.readDouble();
+        double length = in.readDouble();
+        double height = in.readDouble();
+        Room.Shape shape = Room.Shape.values()[in.readUnsignedByte()];
+        Color floorColor = new Color(in.readInt(), true);
+        Color wallColor = new Color(in.readInt(), true);
+        return new Room(width, length, height, shape, floorColor, wallColor);
+    }
+
+    private static void writeFurniture(DataOutput out, Furniture furniture) throws IOException {
+        out.writeInt(furniture.getId());
+        out.writeByte(furniture.getType().ordinal());
+        out.writeDouble(furniture.getWidth());
+        out.writeDouble(furniture.getLength());
+        out.writeDouble(furniture.getHeight());
+        out.writeDouble(furniture.getRotation());
+
+        Color color = furniture.getColor();
+        Point position = furniture.getPosition();
+        out.writeByte((color != null ? HAS_COLOR : 0) | (position != null ? HAS_POSITION : 0));
+        if (color != null) {
+            out.writeInt(color.getRGB());
+        }
+        if (position != null) {
+            out.writeInt(position.x);
+            out.writeInt(position.y);
+        }
+    }
+
+    private static Furniture readFurniture(DataInput in) throws IOException {
+        int id = in.readInt();
+        Furniture.Type type = Furniture.Type.values()[in.readUnsignedByte()];
+        Furniture furniture = new Furniture(id, type, in.readDouble(), in.readDouble(), in.readDouble());
+        furniture.setRotation(in.readDouble());
+
+        int flags = in.readUnsignedByte();
+        furniture.setColor((flags & HAS_COLOR) != 0 ? new Color(in.readInt(), true) : null);
+        furniture.setPosition((flags & HAS_POSITION) != 0 ? new Point(in.readInt(), in.readInt()) : null);
+        return furniture;
+    }
+}
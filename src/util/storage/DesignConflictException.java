@@ -0,0 +1,46 @@
+package util.storage;
+
+import model.Design;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a design is saved on top of a version other than the one it was loaded from,
+ * i.e. someone else saved it in the meantime. The save is rejected rather than overwriting
+ * their changes; reload the design and apply the edit again.
+ */
+public class DesignConflictException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int designId;
+    private final int expectedVersion;
+    private final int storedVersion;
+
+    public DesignConflictException(int designId, int expectedVersion, int storedVersion) {
+        super("Design " + designId + " was changed elsewhere (saving over version " + expectedVersion
+                + ", stored version is " + storedVersion + ")");
+        this.designId = designId;
+        this.expectedVersion = expectedVersion;
+        this.storedVersion = storedVersion;
+    }
+
+    // Reject the save unless the design is based on the stored version; otherwise advance its version
+    static void checkAndAdvance(Design design, int storedVersion) throws DesignConflictException {
+        if (design.getVersion() != storedVersion) {
+            throw new DesignConflictException(design.getId(), design.getVersion(), storedVersion);
+        }
+        design.setVersion(storedVersion + 1);
+    }
+
+    public int getDesignId() {
+        return designId;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public int getStoredVersion() {
+        return storedVersion;
+    }
+}
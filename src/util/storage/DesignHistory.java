@@ -0,0 +1,638 @@
+package util.storage;
+
+import model.Design;
+import model.DesignRevision;
+import model.Furniture;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every saved revision of every design, kept as content-addressed chunks.
+ * A revision is split into a metadata chunk (name, owner, date), a room chunk, one chunk per
+ * piece of furniture, and page chunks listing up to PAGE_SIZE furniture chunks each. Chunks are
+ * keyed by a hash of their bytes and stored once, so a revision only adds the chunks that
+ * changed plus a small record naming its metadata, room and page chunks.
+ *
+ * Chunks and revision records share one append-only log; a revision is appended right after the
+ * new chunks it needs, with a single sync. The chunk locations and each design's revisions are
+ * held in memory and saved to an index file next to the log, so opening the history reads the
+ * index and scans only the records appended since it was saved. Records appended by other
+ * processes are caught up with whenever the log lock is taken.
+ *
+ * Revisions of deleted designs stay in the log until a process that has the history to itself
+ * opens it; once enough of the log belongs to deleted designs, it is rewritten with only the
+ * revisions of the designs that still exist and the chunks they use.
+ *
+ * Chunk payload: hash (16) + chunk bytes, with design id 0. Revision payload: revision number (4)
+ * + saved at (8) + furniture count (4) + metadata hash (16) + room flag (1) and hash (16)
+ * + page count (4) + page hashes (16 each), with the design id as the record id.
+ *
+ * Index file: magic + version + log position it covers (8) + chunk count (4) and per chunk its
+ * hash (16) and position (8) + design count (4) and per design its id (4), log bytes (8),
+ * revision count (4) and each revision as length (4) + revision payload.
+ */
+public class DesignHistory implements Closeable {
+    private static final int MAGIC = 0x52444853; // "RDHS"
+    private static final int INDEX_MAGIC = 0x52444849; // "RDHI"
+    private static final int INDEX_VERSION = 1;
+    private static final int HASH_SIZE = 16;
+
+    // Compact on open once at least this much of the log, and at least a quarter of it, belongs to deleted designs
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    // Furniture chunks per page; a moved piece of furniture rewrites one page of this many hashes
+    private static final int PAGE_SIZE = 8;
+
+    private final File file;
+    private final File indexFile;
+    private FileChannel channel;
+    private final ProcessLock processLock;
+    private final MessageDigest digest;
+
+    // Record position of every chunk in the log
+    private final Map<ChunkKey, Long> chunks = new HashMap<>();
+
+    // Revisions of each design, oldest first
+    private final Map<Integer, List<Revision>> revisions = new HashMap<>();
+
+    // Log bytes each design's revisions added, including the new chunks they stored
+    private final Map<Integer, Long> designBytes = new HashMap<>();
+
+    // Bytes of chunks read since the last revision record; they were stored for the next one
+    private long unclaimedBytes = 0;
+
+    // How far the log has been read into the maps above, and how far the saved index covers
+    private long scannedTo = RecordFormat.FILE_HEADER_SIZE;
+    private long indexedTo = -1;
+
+    private DesignHistory(File file, FileChannel channel, ProcessLock processLock) throws IOException {
+        this.file = file;
+        this.indexFile = new File(file.getParentFile(), file.getName() + ".idx");
+        this.channel = channel;
+        this.processLock = processLock;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Open the history, creating it if needed. The ids are the designs that still exist; if this
+     * is the only process with the history open and enough of it belongs to other designs, it is
+     * compacted before it is returned.
+     */
+    public static DesignHistory open(File file, int[] liveIds) throws IOException {
+        ProcessLock processLock = ProcessLock.open(new File(file.getParentFile(), file.getName() + ".lock"));
+        try {
+            long started = System.nanoTime();
+            FileLock lock = processLock.exclusive();
+            try {
+                // Opened under the lock, so a compaction by a process opening it just before is not missed
+                FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                DesignHistory history = new DesignHistory(file, channel, processLock);
+                try {
+                    if (channel.size() == 0) {
+                        RecordFormat.writeFileHeader(channel, MAGIC);
+                        channel.force(true);
+                    } else if (RecordFormat.readFileVersion(channel, MAGIC) != RecordFormat.VERSION) {
+                        throw new IOException("Unsupported design history format: " + file);
+                    }
+                    history.loadIndex();
+                    long indexed = history.scannedTo;
+                    history.catchUp(true);
+                    long scanned = history.scannedTo - indexed;
+
+                    if (processLock.isOnlyProcess() && history.needsCompaction(liveIds)) {
+                        try {
+                            history.compact(liveIds);
+                        } catch (IOException e) {
+                            // The full history is still there; the next open tries again
+                            System.err.println("Error compacting design history: " + e.getMessage());
+                        }
+                    }
+                    if (history.scannedTo != history.indexedTo) {
+                        history.saveIndex();
+                    }
+                    processLock.join();
+
+                    System.out.printf("[DesignHistory] Loaded %d chunks and %d designs' revisions in %.1f ms (%d log bytes past the index)%n",
+                            history.chunks.size(), history.revisions.size(), (System.nanoTime() - started) / 1e6,
+                            scanned);
+                    return history;
+                } catch (IOException | RuntimeException e) {
+                    history.channel.close();
+                    throw e;
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            processLock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add the design as it is now as its newest revision, storing only chunks not already held.
+     * Returns the revision number; if nothing changed since the newest revision, that one's.
+     */
+    public synchronized int record(Design design) throws IOException {
+        byte[] metadata = DesignCodec.encodeMetadata(design);
+        byte[] room = design.getRoom() != null ? DesignCodec.encodeRoom(design.getRoom()) : null;
+        List<byte[]> furniture = new ArrayList<>(design.getFurnitureList().size());
+        for (Furniture item : design.getFurnitureList()) {
+            furniture.add(DesignCodec.encodeFurniture(item));
+        }
+
+        FileLock lock = lockExclusive();
+        try {
+            long start = channel.size();
+            ByteArrayOutputStream appended = new ByteArrayOutputStream();
+            Map<ChunkKey, Long> added = new LinkedHashMap<>();
+
+            ChunkKey metadataKey = addChunk(metadata, start, appended, added);
+            ChunkKey roomKey = room != null ? addChunk(room, start, appended, added) : null;
+            ChunkKey[] pageKeys = new ChunkKey[(furniture.size() + PAGE_SIZE - 1) / PAGE_SIZE];
+            for (int page = 0; page < pageKeys.length; page++) {
+                int from = page * PAGE_SIZE;
+                int to = Math.min(from + PAGE_SIZE, furniture.size());
+                ByteBuffer pageBytes = ByteBuffer.allocate((to - from) * HASH_SIZE);
+                for (int i = from; i < to; i++) {
+                    addChunk(furniture.get(i), start, appended, added).writeTo(pageBytes);
+                }
+                pageKeys[page] = addChunk(pageBytes.array(), start, appended, added);
+            }
+
+            List<Revision> designRevisions = revisions.get(design.getId());
+            Revision latest = designRevisions != null ? designRevisions.get(designRevisions.size() - 1) : null;
+            if (latest != null && latest.hasContent(furniture.size(), metadataKey, roomKey, pageKeys)) {
+                return latest.number;
+            }
+
+            Revision revision = new Revision(latest != null ? latest.number + 1 : 1, System.currentTimeMillis(),
+                    furniture.size(), metadataKey, roomKey, pageKeys);
+            write(appended, RecordFormat.frame(RecordFormat.REVISION, design.getId(), revision.encode()));
+            RecordFormat.writeFully(channel, ByteBuffer.wrap(appended.toByteArray()), start);
+            channel.force(false);
+
+            chunks.putAll(added);
+            revisions.computeIfAbsent(design.getId(), id -> new ArrayList<>()).add(revision);
+            designBytes.merge(design.getId(), (long) appended.size(), Long::sum);
+            scannedTo = start + appended.size();
+            return revision.number;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Revisions of a design, oldest first; empty if it has none
+    public synchronized List<DesignRevision> list(int designId) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            List<Revision> designRevisions = revisions.getOrDefault(designId, Collections.emptyList());
+            List<DesignRevision> listed = new ArrayList<>(designRevisions.size());
+            for (Revision revision : designRevisions) {
+                String name = DesignCodec.decodeMetadata(designId, readChunk(revision.metadata)).getName();
+                listed.add(new DesignRevision(designId, revision.number, new Date(revision.savedAt), name,
+                        revision.furnitureCount));
+            }
+            return listed;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // The design as it was at the given revision, or null if there is no such revision
+    public synchronized Design checkout(int designId, int revisionNumber) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            Revision revision = null;
+            for (Revision candidate : revisions.getOrDefault(designId, Collections.emptyList())) {
+                if (candidate.number == revisionNumber) {
+                    revision = candidate;
+                }
+            }
+            if (revision == null) {
+                return null;
+            }
+
+            Design design = DesignCodec.decodeMetadata(designId, readChunk(revision.metadata));
+            if (revision.room != null) {
+                design.setRoom(DesignCodec.decodeRoom(readChunk(revision.room)));
+            }
+            for (ChunkKey pageKey : revision.pages) {
+                ByteBuffer page = ByteBuffer.wrap(readChunk(pageKey));
+                while (page.hasRemaining()) {
+                    design.addFurniture(DesignCodec.decodeFurniture(readChunk(ChunkKey.readFrom(page))));
+                }
+            }
+            return design;
+        } finally {
+            lock.release();
+        }
+    }
+
+    public synchronized int getChunkCount() {
+        return chunks.size();
+    }
+
+    public synchronized long getStoredBytes() throws IOException {
+        return channel.size();
+    }
+
+    // Save the index so the next open does not scan what this process has read, then release the log
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            FileLock lock = lockExclusive();
+            try {
+                if (scannedTo != indexedTo) {
+                    saveIndex();
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                processLock.close();
+            }
+        }
+    }
+
+    // Queue the chunk for appending unless it is already stored; returns its key either way
+    private ChunkKey addChunk(byte[] data, long start, ByteArrayOutputStream appended, Map<ChunkKey, Long> added) {
+        ChunkKey key = ChunkKey.of(digest.digest(data));
+        if (!chunks.containsKey(key) && !added.containsKey(key)) {
+            added.put(key, start + appended.size());
+            ByteBuffer payload = ByteBuffer.allocate(HASH_SIZE + data.length);
+            key.writeTo(payload);
+            payload.put(data);
+            write(appended, RecordFormat.frame(RecordFormat.CHUNK, 0, payload.array()));
+        }
+        return key;
+    }
+
+    private static void write(ByteArrayOutputStream out, ByteBuffer record) {
+        out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+    }
+
+    // Whether enough of the log holds revisions of designs that are not in the given list
+    private boolean needsCompaction(int[] liveIds) {
+        Set<Integer> live = new HashSet<>();
+        for (int id : liveIds) {
+            live.add(id);
+        }
+        long garbage = 0;
+        for (Map.Entry<Integer, Long> design : designBytes.entrySet()) {
+            if (!live.contains(design.getKey())) {
+                garbage += design.getValue();
+            }
+        }
+        return garbage >= MIN_COMPACTION_GARBAGE && garbage * 4 >= scannedTo;
+    }
+
+    /**
+     * Rewrite the log with only the revisions of the given designs and the chunks they use.
+     * Called while opening, with the exclusive lock held and no other process attached, so the
+     * new file can simply be renamed over the old one. The index is removed before the swap and
+     * saved again after it, so a crash in between leaves a full scan of the new log to the next open.
+     */
+    private void compact(int[] liveIds) throws IOException {
+        long started = System.nanoTime();
+        long oldSize = scannedTo;
+        int[] ids = liveIds.clone();
+        Arrays.sort(ids);
+
+        Map<ChunkKey, Long> keptChunks = new HashMap<>();
+        Map<Integer, List<Revision>> keptRevisions = new HashMap<>();
+        Map<Integer, Long> keptBytes = new HashMap<>();
+
+        // Named per run, like the design log's compaction
+        File target = File.createTempFile(file.getName() + ".", ".compact", file.getAbsoluteFile().getParentFile());
+        FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        boolean swapped = false;
+        try {
+            RecordFormat.writeFileHeader(out, MAGIC);
+            long position = RecordFormat.FILE_HEADER_SIZE;
+            for (int id : ids) {
+                List<Revision> designRevisions = revisions.get(id);
+                if (designRevisions == null) {
+                    continue;
+                }
+                long designStart = position;
+                for (Revision revision : designRevisions) {
+                    // Chunks go before the revision that names them, as record() appends them
+                    position = copyChunk(revision.metadata, out, position, keptChunks);
+                    if (revision.room != null) {
+                        position = copyChunk(revision.room, out, position, keptChunks);
+                    }
+                    for (ChunkKey pageKey : revision.pages) {
+                        ByteBuffer page = ByteBuffer.wrap(readChunk(pageKey));
+                        while (page.hasRemaining()) {
+                            position = copyChunk(ChunkKey.readFrom(page), out, position, keptChunks);
+                        }
+                        position = copyChunk(pageKey, out, position, keptChunks);
+                    }
+                    ByteBuffer record = RecordFormat.frame(RecordFormat.REVISION, id, revision.encode());
+                    int recordLength = record.remaining();
+                    RecordFormat.writeFully(out, record, position);
+                    position += recordLength;
+                }
+                keptRevisions.put(id, designRevisions);
+                keptBytes.put(id, position - designStart);
+            }
+            out.force(true);
+
+            Files.deleteIfExists(indexFile.toPath());
+            indexedTo = -1;
+            AtomicFiles.replace(target, file);
+            swapped = true;
+            channel.close();
+            channel = out;
+
+            int dropped = revisions.size() - keptRevisions.size();
+            chunks.clear();
+            chunks.putAll(keptChunks);
+            revisions.clear();
+            revisions.putAll(keptRevisions);
+            designBytes.clear();
+            designBytes.putAll(keptBytes);
+            unclaimedBytes = 0;
+            scannedTo = position;
+            saveIndex();
+
+            System.out.printf("[DesignHistory] Compacted %s from %d to %d bytes, dropping the history of %d deleted designs, in %.1f ms%n",
+                    file.getName(), oldSize, position, dropped, (System.nanoTime() - started) / 1e6);
+        } finally {
+            if (!swapped) {
+                out.close();
+                target.delete();
+            }
+        }
+    }
+
+    // Copy a chunk to the compacted log unless it is already there; returns the position after it
+    private long copyChunk(ChunkKey key, FileChannel out, long position, Map<ChunkKey, Long> copied) throws IOException {
+        if (copied.containsKey(key)) {
+            return position;
+        }
+        Long from = chunks.get(key);
+        RecordFormat.Record record = from != null ? RecordFormat.read(channel, from, scannedTo) : null;
+        if (record == null) {
+            throw new IOException("Missing chunk in " + file.getName());
+        }
+        ByteBuffer framed = RecordFormat.frame(RecordFormat.CHUNK, 0, record.payload);
+        int recordLength = framed.remaining();
+        RecordFormat.writeFully(out, framed, position);
+        copied.put(key, position);
+        return position + recordLength;
+    }
+
+    // Start from the saved index if it still fits the log; otherwise catchUp() scans the whole log
+    private void loadIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        Map<ChunkKey, Long> indexedChunks = new HashMap<>();
+        Map<Integer, List<Revision>> indexedRevisions = new HashMap<>();
+        Map<Integer, Long> indexedBytes = new HashMap<>();
+        long coveredTo;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                System.err.println("Ignoring " + indexFile.getName() + ", which is not a design history index");
+                return;
+            }
+            coveredTo = in.readLong();
+            if (coveredTo < RecordFormat.FILE_HEADER_SIZE || coveredTo > channel.size()) {
+                System.err.println("Ignoring " + indexFile.getName() + ", which does not match " + file.getName());
+                return;
+            }
+
+            int chunkCount = in.readInt();
+            for (int i = 0; i < chunkCount; i++) {
+                indexedChunks.put(new ChunkKey(in.readLong(), in.readLong()), in.readLong());
+            }
+            int designCount = in.readInt();
+            for (int i = 0; i < designCount; i++) {
+                int id = in.readInt();
+                indexedBytes.put(id, in.readLong());
+                List<Revision> designRevisions = new ArrayList<>();
+                int revisionCount = in.readInt();
+                for (int j = 0; j < revisionCount; j++) {
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    designRevisions.add(Revision.decode(payload));
+                }
+                indexedRevisions.put(id, designRevisions);
+            }
+        } catch (EOFException e) {
+            System.err.println("Ignoring " + indexFile.getName() + ", which is incomplete");
+            return;
+        }
+
+        chunks.putAll(indexedChunks);
+        revisions.putAll(indexedRevisions);
+        designBytes.putAll(indexedBytes);
+        scannedTo = coveredTo;
+        indexedTo = coveredTo;
+    }
+
+    // Write the index for what has been scanned; needs the exclusive lock, since the temporary file name is shared
+    private void saveIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(scannedTo);
+            out.writeInt(chunks.size());
+            for (Map.Entry<ChunkKey, Long> chunk : chunks.entrySet()) {
+                out.writeLong(chunk.getKey().high);
+                out.writeLong(chunk.getKey().low);
+                out.writeLong(chunk.getValue());
+            }
+            out.writeInt(revisions.size());
+            for (Map.Entry<Integer, List<Revision>> design : revisions.entrySet()) {
+                out.writeInt(design.getKey());
+                out.writeLong(designBytes.getOrDefault(design.getKey(), 0L));
+                out.writeInt(design.getValue().size());
+                for (Revision revision : design.getValue()) {
+                    byte[] payload = revision.encode();
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+            }
+        }
+        AtomicFiles.write(indexFile, bytes.toByteArray());
+        indexedTo = scannedTo;
+    }
+
+    private byte[] readChunk(ChunkKey key) throws IOException {
+        Long position = chunks.get(key);
+        RecordFormat.Record record = position != null ? RecordFormat.read(channel, position, scannedTo) : null;
+        if (record == null) {
+            throw new IOException("Missing chunk in " + file.getName());
+        }
+        byte[] data = new byte[record.payload.length - HASH_SIZE];
+        System.arraycopy(record.payload, HASH_SIZE, data, 0, data.length);
+        return data;
+    }
+
+    private FileLock lockShared() throws IOException {
+        FileLock lock = processLock.shared();
+        try {
+            catchUp(false);
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    private FileLock lockExclusive() throws IOException {
+        FileLock lock = processLock.exclusive();
+        try {
+            catchUp(true);
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    /**
+     * Read records appended since the last scan. With the exclusive lock held, a torn record
+     * left by a process that died while appending is cut off, and a damaged record with more
+     * after it fails the scan; otherwise the scan stops before either.
+     */
+    private void catchUp(boolean repair) throws IOException {
+        long size = channel.size();
+        long position = scannedTo;
+        RecordFormat.Record record;
+        while ((record = RecordFormat.read(channel, position, size)) != null) {
+            long recordLength = record.end() - record.position;
+            if (record.type == RecordFormat.CHUNK) {
+                chunks.putIfAbsent(ChunkKey.readFrom(ByteBuffer.wrap(record.payload)), record.position);
+                unclaimedBytes += recordLength;
+            } else if (record.type == RecordFormat.REVISION) {
+                revisions.computeIfAbsent(record.id, id -> new ArrayList<>()).add(Revision.decode(record.payload));
+                designBytes.merge(record.id, unclaimedBytes + recordLength, Long::sum);
+                unclaimedBytes = 0;
+            }
+            position = record.end();
+        }
+        scannedTo = position;
+
+        if (repair) {
+            RecordFormat.truncateTornTail(channel, position, file.getName());
+        }
+    }
+
+    // First 128 bits of a chunk's SHA-256
+    private static final class ChunkKey {
+        final long high;
+        final long low;
+
+        ChunkKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        static ChunkKey of(byte[] sha256) {
+            return readFrom(ByteBuffer.wrap(sha256));
+        }
+
+        static ChunkKey readFrom(ByteBuffer buffer) {
+            return new ChunkKey(buffer.getLong(), buffer.getLong());
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.putLong(high).putLong(low);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ChunkKey && ((ChunkKey) other).high == high && ((ChunkKey) other).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high);
+        }
+    }
+
+    private static final class Revision {
+        final int number;
+        final long savedAt;
+        final int furnitureCount;
+        final ChunkKey metadata;
+        final ChunkKey room;
+        final ChunkKey[] pages;
+
+        Revision(int number, long savedAt, int furnitureCount, ChunkKey metadata, ChunkKey room, ChunkKey[] pages) {
+            this.number = number;
+            this.savedAt = savedAt;
+            this.furnitureCount = furnitureCount;
+            this.metadata = metadata;
+            this.room = room;
+            this.pages = pages;
+        }
+
+        boolean hasContent(int furnitureCount, ChunkKey metadata, ChunkKey room, ChunkKey[] pages) {
+            return this.furnitureCount == furnitureCount
+                    && this.metadata.equals(metadata)
+                    && (this.room == null ? room == null : this.room.equals(room))
+                    && Arrays.equals(this.pages, pages);
+        }
+
+        byte[] encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 4 + HASH_SIZE + 1 + HASH_SIZE + 4 + pages.length * HASH_SIZE);
+            buffer.putInt(number).putLong(savedAt).putInt(furnitureCount);
+            metadata.writeTo(buffer);
+            buffer.put((byte) (room != null ? 1 : 0));
+            (room != null ? room : new ChunkKey(0, 0)).writeTo(buffer);
+            buffer.putInt(pages.length);
+            for (ChunkKey page : pages) {
+                page.writeTo(buffer);
+            }
+            return buffer.array();
+        }
+
+        static Revision decode(byte[] payload) {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            int number = buffer.getInt();
+            long savedAt = buffer.getLong();
+            int furnitureCount = buffer.getInt();
+            ChunkKey metadata = ChunkKey.readFrom(buffer);
+            boolean hasRoom = buffer.get() != 0;
+            ChunkKey room = ChunkKey.readFrom(buffer);
+            ChunkKey[] pages = new ChunkKey[buffer.getInt()];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ChunkKey.readFrom(buffer);
+            }
+            return new Revision(number, savedAt, furnitureCount, metadata, hasRoom ? room : null, pages);
+        }
+    }
+}
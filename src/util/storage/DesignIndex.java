@@ -0,0 +1,355 @@
+package util.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Fixed-width, memory-mapped index over the design log.
+ * Design ids address their slot directly, so resolving an id to its record is a single
+ * read from the mapping. Each owner email hash picks a bucket holding a doubly linked
+ * chain of ids, so listing a user's designs only visits that bucket.
+ *
+ * The mapping is shared by every process that has the log open, so an update made under the
+ * log's write lock is immediately visible to the others. The header also carries the log
+ * generation, bumped whenever the log file is replaced, so other processes know to reopen it.
+ *
+ * Layout: 64-byte header, then BUCKET_COUNT 4-byte bucket heads, then one 32-byte slot per id.
+ */
+class DesignIndex implements Closeable {
+    private static final int MAGIC = 0x52444D49; // "RDMI"
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int BUCKET_COUNT = 4096;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SLOTS_OFFSET = HEADER_SIZE + BUCKET_COUNT * 4;
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_MAX_ID = 12;
+    private static final int H_COUNT = 16;
+    private static final int H_CLEAN = 20;
+    private static final int H_LOG_POSITION = 24;
+    private static final int H_CHECKPOINT = 32;
+    private static final int H_GENERATION = 40;
+    private static final int H_LIVE_BYTES = 48;
+
+    // Slot fields
+    private static final int S_LIVE = 0;
+    private static final int S_OWNER_HASH = 4;
+    private static final int S_OFFSET = 8;
+    private static final int S_LENGTH = 16;
+    private static final int S_NEXT = 20;
+    private static final int S_PREV = 24;
+    private static final int S_VERSION = 28;
+
+    private final File file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    private DesignIndex(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    static DesignIndex open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        DesignIndex index = new DesignIndex(file, channel);
+
+        if (channel.size() >= SLOTS_OFFSET) {
+            index.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            index.capacity = index.buffer.getInt(H_CAPACITY);
+        }
+        if (!index.hasValidHeader()) {
+            index.reset();
+        }
+        return index;
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        return buffer != null
+                && buffer.getInt(H_MAGIC) == MAGIC
+                && buffer.getInt(H_VERSION) == VERSION
+                && capacity > 0
+                && slotPosition(capacity) <= channel.size();
+    }
+
+    // True if the index was closed cleanly and covers no more than the given log length
+    boolean isConsistentWith(long logSize) {
+        return buffer.getInt(H_CLEAN) == 1 && getLogPosition() <= logSize;
+    }
+
+    // Drop every entry; the caller rebuilds by replaying the log from the start
+    void reset() throws IOException {
+        int generation = buffer != null ? buffer.getInt(H_GENERATION) : 0;
+        capacity = INITIAL_CAPACITY;
+        channel.truncate(0);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(capacity));
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putInt(H_CAPACITY, capacity);
+        buffer.putInt(H_MAX_ID, 0);
+        buffer.putInt(H_COUNT, 0);
+        buffer.putInt(H_CLEAN, 0);
+        buffer.putLong(H_LOG_POSITION, 0L);
+        buffer.putLong(H_CHECKPOINT, 0L);
+        buffer.putInt(H_GENERATION, generation + 1);
+        buffer.putLong(H_LIVE_BYTES, 0L);
+    }
+
+    // Pick up a capacity change made by another process
+    void refresh() throws IOException {
+        int sharedCapacity = buffer.getInt(H_CAPACITY);
+        if (sharedCapacity != capacity) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(sharedCapacity));
+            capacity = sharedCapacity;
+        }
+    }
+
+    // Changes whenever the log file is replaced or the index rebuilt
+    int getGeneration() {
+        return buffer.getInt(H_GENERATION);
+    }
+
+    void advanceGeneration() {
+        buffer.putInt(H_GENERATION, getGeneration() + 1);
+    }
+
+    // Bytes taken by the current record of each live design, headers included
+    long getLiveBytes() {
+        return buffer.getLong(H_LIVE_BYTES);
+    }
+
+    void setClean(boolean clean) {
+        buffer.putInt(H_CLEAN, clean ? 1 : 0);
+    }
+
+    // Length of the log already reflected in this index
+    long getLogPosition() {
+        return buffer.getLong(H_LOG_POSITION);
+    }
+
+    void setLogPosition(long position) {
+        buffer.putLong(H_LOG_POSITION, position);
+    }
+
+    // Log position up to which the index is known to be on disk
+    long getCheckpoint() {
+        return buffer.getLong(H_CHECKPOINT);
+    }
+
+    /**
+     * Flush the mapping, then record the current log position as durable.
+     * Replaying from a checkpoint is safe because every update below is idempotent.
+     */
+    void checkpoint() {
+        buffer.force();
+        buffer.putLong(H_CHECKPOINT, getLogPosition());
+        buffer.force();
+    }
+
+    // Force a full replay if the process dies before the next checkpoint, e.g. while the log is swapped
+    void invalidateCheckpoint() {
+        buffer.putLong(H_CHECKPOINT, 0L);
+        buffer.force();
+    }
+
+    // Recompute the live count and live bytes from the slots
+    void recount() {
+        int count = 0;
+        long liveBytes = 0;
+        int maxId = Math.min(getMaxId(), capacity - 1);
+        for (int id = 1; id <= maxId; id++) {
+            if (contains(id)) {
+                count++;
+                liveBytes += RecordFormat.HEADER_SIZE + length(id);
+            }
+        }
+        buffer.putInt(H_COUNT, count);
+        buffer.putLong(H_LIVE_BYTES, liveBytes);
+    }
+
+    int getMaxId() {
+        return buffer.getInt(H_MAX_ID);
+    }
+
+    int size() {
+        return buffer.getInt(H_COUNT);
+    }
+
+    boolean contains(int id) {
+        return id > 0 && id < capacity && buffer.getInt(slotPosition(id) + S_LIVE) == 1;
+    }
+
+    // Payload offset in the log, or -1 if the design is not stored
+    long offset(int id) {
+        return contains(id) ? buffer.getLong(slotPosition(id) + S_OFFSET) : -1L;
+    }
+
+    int length(int id) {
+        return contains(id) ? buffer.getInt(slotPosition(id) + S_LENGTH) : 0;
+    }
+
+    // Saved version of a live design, 0 if it is not stored
+    int version(int id) {
+        return contains(id) ? buffer.getInt(slotPosition(id) + S_VERSION) : 0;
+    }
+
+    void put(int id, int ownerHash, long offset, int length, int version) throws IOException {
+        if (id <= 0) {
+            throw new IOException("Invalid design id " + id);
+        }
+        ensureCapacity(id);
+
+        int slot = slotPosition(id);
+        if (contains(id) && buffer.getLong(slot + S_OFFSET) == offset) {
+            return; // Replaying a record the index already reflects
+        }
+
+        long liveBytes = getLiveBytes() + RecordFormat.HEADER_SIZE + length;
+        if (contains(id)) {
+            liveBytes -= RecordFormat.HEADER_SIZE + length(id);
+            if (buffer.getInt(slot + S_OWNER_HASH) != ownerHash) {
+                unlink(id);
+                link(id, ownerHash);
+            }
+        } else {
+            // Marked live only once linked, so a crash part way leaves the slot free for replay
+            link(id, ownerHash);
+            buffer.putInt(slot + S_LIVE, 1);
+            buffer.putInt(H_COUNT, size() + 1);
+        }
+
+        buffer.putLong(slot + S_OFFSET, offset);
+        buffer.putInt(slot + S_LENGTH, length);
+        buffer.putInt(slot + S_VERSION, version);
+        buffer.putInt(H_MAX_ID, Math.max(getMaxId(), id));
+        buffer.putLong(H_LIVE_BYTES, liveBytes);
+    }
+
+    // Point a live design at the same record in a rewritten log
+    void relocate(int id, long offset) {
+        if (contains(id)) {
+            buffer.putLong(slotPosition(id) + S_OFFSET, offset);
+        }
+    }
+
+    void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        // Unlinking twice is harmless, so the slot stays live until the chain is repaired
+        unlink(id);
+        buffer.putLong(H_LIVE_BYTES, getLiveBytes() - RecordFormat.HEADER_SIZE - length(id));
+        buffer.putInt(slotPosition(id) + S_LIVE, 0);
+        buffer.putInt(H_COUNT, size() - 1);
+    }
+
+    // Ids of live designs whose owner hashes to the same value, in ascending order
+    int[] idsForOwner(int ownerHash) {
+        int[] ids = new int[8];
+        int count = 0;
+        int id = buffer.getInt(bucketPosition(ownerHash));
+        while (id != 0) {
+            int slot = slotPosition(id);
+            if (buffer.getInt(slot + S_OWNER_HASH) == ownerHash) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = id;
+            }
+            id = buffer.getInt(slot + S_NEXT);
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    // Ids of all live designs in ascending order
+    int[] liveIds() {
+        int[] ids = new int[size()];
+        int count = 0;
+        int maxId = getMaxId();
+        for (int id = 1; id <= maxId && count < ids.length; id++) {
+            if (contains(id)) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    // The log marks the index clean first if no other process still has it open
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+        channel.close();
+    }
+
+    // Push the id onto the front of its owner bucket
+    private void link(int id, int ownerHash) {
+        int bucket = bucketPosition(ownerHash);
+        int head = buffer.getInt(bucket);
+        if (head == id) {
+            return; // Already linked by an interrupted earlier attempt
+        }
+        int slot = slotPosition(id);
+
+        buffer.putInt(slot + S_OWNER_HASH, ownerHash);
+        buffer.putInt(slot + S_NEXT, head);
+        buffer.putInt(slot + S_PREV, 0);
+        if (head != 0) {
+            buffer.putInt(slotPosition(head) + S_PREV, id);
+        }
+        buffer.putInt(bucket, id);
+    }
+
+    private void unlink(int id) {
+        int slot = slotPosition(id);
+        int next = buffer.getInt(slot + S_NEXT);
+        int prev = buffer.getInt(slot + S_PREV);
+
+        if (prev != 0) {
+            buffer.putInt(slotPosition(prev) + S_NEXT, next);
+        } else {
+            buffer.putInt(bucketPosition(buffer.getInt(slot + S_OWNER_HASH)), next);
+        }
+        if (next != 0) {
+            buffer.putInt(slotPosition(next) + S_PREV, prev);
+        }
+    }
+
+    private void ensureCapacity(int id) throws IOException {
+        if (id < capacity) {
+            return;
+        }
+        int newCapacity = capacity;
+        while (newCapacity <= id) {
+            newCapacity *= 2;
+        }
+
+        // Mapping a larger region grows the file; new slots read as empty
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(newCapacity));
+        capacity = newCapacity;
+        buffer.putInt(H_CAPACITY, capacity);
+        System.out.println("Grew " + file.getName() + " to " + capacity + " design slots");
+    }
+
+    private static int bucketPosition(int ownerHash) {
+        return HEADER_SIZE + Math.floorMod(ownerHash, BUCKET_COUNT) * 4;
+    }
+
+    private static int slotPosition(int id) {
+        return SLOTS_OFFSET + id * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,610 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only record log for designs.
+ * Every add, update or delete appends one record to the end of the file, so the cost
+ * of a save depends on the size of the changed design and not on the size of the store.
+ * Record locations are kept in a memory-mapped DesignIndex next to the log; on open only
+ * the part of the log the index has not seen yet is replayed.
+ *
+ * The log doubles as the write-ahead journal: each record carries a checksum and is fsynced
+ * before the index is touched, and a torn record at the tail is cut off during recovery.
+ *
+ * Superseded and deleted records stay in the file until compact() copies the live records
+ * into a new file and swaps it in; see LogCompactor for running that in the background.
+ *
+ * Several application instances can share the log. Reads hold a shared lock and writes an
+ * exclusive lock on designs.log.lock, and the index mapping is shared, so each process sees
+ * the others' saves. Every design carries a version that is checked under the write lock:
+ * saving a design that someone else saved since it was loaded fails with a
+ * DesignConflictException instead of overwriting their changes.
+ */
+public class DesignLog implements DesignStore {
+    private static final int MAGIC = 0x52444C47; // "RDLG"
+
+    // Make the index durable after this many records, bounding replay after a crash
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    // Compact once at least this much of the log, and at least half of it, is dead records
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    private final File file;
+    private FileChannel channel;
+
+    // Where the latest record of each live design sits in the log
+    private final DesignIndex index;
+    private int recordsSinceCheckpoint = 0;
+
+    // Coordinates the processes sharing this log
+    private final ProcessLock processLock;
+
+    // Log generation this process has open; another process bumps it when it replaces the file
+    private int generation;
+
+    // Only one compaction at a time; readers and writers use the log's own lock
+    private final Object compactionLock = new Object();
+    private int compactionCount = 0;
+    private long reclaimedBytes = 0;
+    private long lastPauseNanos = 0;
+    private long maxPauseNanos = 0;
+
+    private DesignLog(File file, FileChannel channel, DesignIndex index, ProcessLock processLock) {
+        this.file = file;
+        this.channel = channel;
+        this.index = index;
+        this.processLock = processLock;
+    }
+
+    public static DesignLog open(File file) throws IOException {
+        ProcessLock processLock = ProcessLock.open(new File(file.getParentFile(), file.getName() + ".lock"));
+        try {
+            FileLock lock = processLock.exclusive();
+            try {
+                // Only the first process to open the log recovers it
+                boolean alone = processLock.isOnlyProcess();
+
+                FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (channel.size() == 0) {
+                    RecordFormat.writeFileHeader(channel, MAGIC);
+                    channel.force(true);
+                } else if (RecordFormat.readFileVersion(channel, MAGIC) != RecordFormat.VERSION) {
+                    channel.close();
+                    throw new IOException("Unsupported design log format: " + file);
+                }
+
+                DesignIndex index = DesignIndex.open(new File(file.getParentFile(), file.getName() + ".idx"));
+                DesignLog log = new DesignLog(file, channel, index, processLock);
+                if (alone) {
+                    log.recover();
+                } else {
+                    // The processes already running keep the index current
+                    log.generation = index.getGeneration();
+                    log.repairTail();
+                }
+                processLock.join();
+                return log;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            processLock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bring the index up to date with the log.
+     * After a clean shutdown only records the index has not seen are replayed. After a crash,
+     * replay starts at the last durable checkpoint, so recovery time follows the length of the
+     * journal tail rather than the number of stored designs.
+     */
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+        long size = channel.size();
+
+        long start;
+        if (index.isConsistentWith(size)) {
+            start = index.getLogPosition();
+        } else if (index.getCheckpoint() >= RecordFormat.FILE_HEADER_SIZE && index.getCheckpoint() <= size) {
+            System.out.println("[DesignLog] " + file.getName() + " was not closed cleanly, recovering from checkpoint");
+            start = index.getCheckpoint();
+        } else {
+            index.reset();
+            start = RecordFormat.FILE_HEADER_SIZE;
+        }
+        boolean clean = index.isConsistentWith(size);
+        generation = index.getGeneration();
+
+        int replayed = replay(start);
+
+        // A crash can interrupt the live-count update, so count again after unclean recovery
+        if (!clean) {
+            index.recount();
+        }
+        index.checkpoint();
+        index.setClean(false);
+
+        System.out.printf("[DesignLog] Replayed %d records (%d bytes) in %.1f ms%n",
+                replayed, index.getLogPosition() - start, (System.nanoTime() - started) / 1e6);
+    }
+
+    // Apply complete records from the given position on and cut off a torn record at the end;
+    // a damaged record with more after it fails the replay rather than losing what follows
+    private int replay(long start) throws IOException {
+        long size = channel.size();
+        int replayed = 0;
+        long position = start;
+        RecordFormat.Record record;
+        while ((record = RecordFormat.read(channel, position, size)) != null) {
+            apply(record);
+            position = record.end();
+            replayed++;
+        }
+
+        RecordFormat.truncateTornTail(channel, position, file.getName());
+        index.setLogPosition(position);
+        return replayed;
+    }
+
+    // Replaying a record is idempotent, so records already reflected in the index are harmless
+    private void apply(RecordFormat.Record record) throws IOException {
+        if (record.type == RecordFormat.PUT) {
+            Design design = DesignCodec.decode(record.payload);
+            index.put(record.id, ownerHash(design.getUserEmail()), record.payloadOffset(), record.payload.length,
+                    design.getVersion());
+        } else {
+            index.remove(record.id);
+        }
+    }
+
+    @Override
+    public synchronized List<Design> readAll() throws IOException {
+        FileLock lock = lockShared();
+        try {
+            int[] ids = index.liveIds();
+            List<Design> designs = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                designs.add(readDesign(id));
+            }
+            return designs;
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized int[] ids() throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return index.liveIds();
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized Design read(int id) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return index.contains(id) ? readDesign(id) : null;
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized List<Design> readByOwner(String userEmail) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            List<Design> designs = new ArrayList<>();
+            for (int id : index.idsForOwner(ownerHash(userEmail))) {
+                Design design = readDesign(id);
+                // Different emails can share a hash
+                if (userEmail.equals(design.getUserEmail())) {
+                    designs.add(design);
+                }
+            }
+            return designs;
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized List<DesignSummary> readSummariesByOwner(String userEmail) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            List<DesignSummary> summaries = new ArrayList<>();
+            for (int id : index.idsForOwner(ownerHash(userEmail))) {
+                DesignSummary summary = readSummary(id);
+                if (userEmail.equals(summary.getUserEmail())) {
+                    summaries.add(summary);
+                }
+            }
+            return summaries;
+        } finally {
+            lock.release();
+        }
+    }
+
+    private Design readDesign(int id) throws IOException {
+        return DesignCodec.decode(readPayload(index.offset(id), index.length(id)));
+    }
+
+    // Reads only the start of the record unless it is too short to hold the summary fields
+    private DesignSummary readSummary(int id) throws IOException {
+        long offset = index.offset(id);
+        int length = index.length(id);
+        if (length > DesignCodec.SUMMARY_PREFIX_SIZE) {
+            DesignSummary summary = DesignCodec.decodeSummaryPrefix(readPayload(offset, DesignCodec.SUMMARY_PREFIX_SIZE));
+            if (summary != null) {
+                return summary;
+            }
+        }
+        return DesignCodec.decodeSummary(readPayload(offset, length));
+    }
+
+    /**
+     * Save the design if it is based on the stored version, and advance its version.
+     * Fails with a DesignConflictException, without waiting, if another save got there first.
+     */
+    @Override
+    public synchronized void put(Design design) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            int storedVersion = index.version(design.getId());
+            DesignConflictException.checkAndAdvance(design, storedVersion);
+            try {
+                byte[] payload = DesignCodec.encode(design);
+                long offset = append(RecordFormat.PUT, design.getId(), payload);
+
+                index.put(design.getId(), ownerHash(design.getUserEmail()), offset + RecordFormat.HEADER_SIZE,
+                        payload.length, design.getVersion());
+                index.setLogPosition(offset + RecordFormat.HEADER_SIZE + payload.length);
+            } catch (IOException | RuntimeException e) {
+                design.setVersion(storedVersion);
+                throw e;
+            }
+            maybeCheckpoint();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Save several designs with a single append and sync, e.g. for a bulk import.
+     * Every design is checked as in put() before anything is written; one conflict rejects the batch.
+     */
+    @Override
+    public synchronized void putAll(List<Design> designs) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            int[] storedVersions = new int[designs.size()];
+            int checked = 0;
+            try {
+                for (Design design : designs) {
+                    storedVersions[checked] = index.version(design.getId());
+                    DesignConflictException.checkAndAdvance(design, storedVersions[checked]);
+                    checked++;
+                }
+
+                ByteArrayOutputStream records = new ByteArrayOutputStream();
+                int[] lengths = new int[designs.size()];
+                for (int i = 0; i < designs.size(); i++) {
+                    byte[] payload = DesignCodec.encode(designs.get(i));
+                    ByteBuffer record = RecordFormat.frame(RecordFormat.PUT, designs.get(i).getId(), payload);
+                    records.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+                    lengths[i] = payload.length;
+                }
+                long offset = channel.size();
+                RecordFormat.writeFully(channel, ByteBuffer.wrap(records.toByteArray()), offset);
+                channel.force(false);
+
+                for (int i = 0; i < designs.size(); i++) {
+                    Design design = designs.get(i);
+                    offset += RecordFormat.HEADER_SIZE;
+                    index.put(design.getId(), ownerHash(design.getUserEmail()), offset, lengths[i], design.getVersion());
+                    offset += lengths[i];
+                }
+                index.setLogPosition(offset);
+            } catch (IOException | RuntimeException e) {
+                for (int i = 0; i < checked; i++) {
+                    designs.get(i).setVersion(storedVersions[i]);
+                }
+                throw e;
+            }
+            maybeCheckpoint();
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized void delete(int id) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            if (!index.contains(id)) {
+                return;
+            }
+            long offset = append(RecordFormat.DELETE, id, new byte[0]);
+
+            index.remove(id);
+            index.setLogPosition(offset + RecordFormat.HEADER_SIZE);
+            maybeCheckpoint();
+        } finally {
+            lock.release();
+        }
+    }
+
+    // The counters below read the shared index mapping directly, without the file lock
+
+    @Override
+    public synchronized boolean contains(int id) {
+        return index.contains(id);
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized int getMaxId() {
+        return index.getMaxId();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            FileLock lock = processLock.exclusive();
+            try {
+                // Only the last process to close the log marks the index clean
+                processLock.leave();
+                if (processLock.isOnlyProcess()) {
+                    index.setClean(true);
+                }
+                index.close();
+                channel.close();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.close();
+        }
+    }
+
+    // Bytes held by superseded and deleted records
+    public synchronized long getGarbageBytes() {
+        return index.getLogPosition() - RecordFormat.FILE_HEADER_SIZE - index.getLiveBytes();
+    }
+
+    public synchronized boolean needsCompaction() {
+        long garbage = getGarbageBytes();
+        return garbage >= MIN_COMPACTION_GARBAGE && garbage * 2 >= index.getLogPosition();
+    }
+
+    /**
+     * Rewrite the log with only the current record of each live design.
+     * Live records are copied while readers and writers carry on against the old file. The log
+     * lock is then taken just long enough to copy records appended in the meantime, rename the
+     * new file over the old one and point the index at the new offsets. A crash at any point
+     * leaves one complete log, which the index is rebuilt from on the next open.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long started = System.nanoTime();
+
+            int[] ids;
+            long[] offsets;
+            int[] lengths;
+            long copiedUpTo;
+            FileChannel source;
+            int sourceGeneration;
+            synchronized (this) {
+                FileLock lock = lockShared();
+                try {
+                    ids = index.liveIds();
+                    offsets = new long[ids.length];
+                    lengths = new int[ids.length];
+                    for (int i = 0; i < ids.length; i++) {
+                        offsets[i] = index.offset(ids[i]);
+                        lengths[i] = index.length(ids[i]);
+                    }
+                    copiedUpTo = index.getLogPosition();
+                    source = channel;
+                    sourceGeneration = generation;
+                } finally {
+                    lock.release();
+                }
+            }
+
+            // Named per run, since another process may be compacting the same log
+            File target = File.createTempFile(file.getName() + ".", ".compact", file.getAbsoluteFile().getParentFile());
+            FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            boolean swapped = false;
+            try {
+                // Copy the live records without holding the log lock
+                RecordFormat.writeFileHeader(out, MAGIC);
+                long position = RecordFormat.FILE_HEADER_SIZE;
+                long[] newOffsets = new long[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    ByteBuffer payload = ByteBuffer.allocate(lengths[i]);
+                    RecordFormat.readFully(source, payload, offsets[i]);
+                    ByteBuffer record = RecordFormat.frame(RecordFormat.PUT, ids[i], payload.array());
+                    int recordLength = record.remaining();
+                    RecordFormat.writeFully(out, record, position);
+                    newOffsets[i] = position + RecordFormat.HEADER_SIZE;
+                    position += recordLength;
+                }
+                out.force(false);
+
+                synchronized (this) {
+                    FileLock lock = lockExclusive();
+                    try {
+                        if (generation != sourceGeneration) {
+                            System.out.println("[DesignLog] Skipped compaction, " + file.getName() + " was compacted by another process");
+                            return;
+                        }
+                        long pauseStarted = System.nanoTime();
+                        long oldSize = index.getLogPosition();
+
+                        // Records appended since the snapshot are copied as they are
+                        long tailStart = position;
+                        copyRange(channel, copiedUpTo, oldSize, out, tailStart);
+                        position += oldSize - copiedUpTo;
+                        out.force(true);
+
+                        index.invalidateCheckpoint();
+                        try {
+                            AtomicFiles.replace(target, file);
+                        } catch (IOException e) {
+                            index.checkpoint();
+                            throw e;
+                        }
+                        swapped = true;
+
+                        for (int id : index.liveIds()) {
+                            long offset = index.offset(id);
+                            if (offset >= copiedUpTo) {
+                                index.relocate(id, offset - copiedUpTo + tailStart);
+                            } else {
+                                index.relocate(id, newOffsets[Arrays.binarySearch(ids, id)]);
+                            }
+                        }
+                        index.setLogPosition(position);
+                        index.advanceGeneration();
+                        index.checkpoint();
+
+                        channel.close();
+                        channel = out;
+                        generation = index.getGeneration();
+
+                        long pause = System.nanoTime() - pauseStarted;
+                        compactionCount++;
+                        reclaimedBytes += oldSize - position;
+                        lastPauseNanos = pause;
+                        maxPauseNanos = Math.max(maxPauseNanos, pause);
+
+                        System.out.printf("[DesignLog] Compacted %s from %d to %d bytes in %.1f ms (paused writers for %.1f ms)%n",
+                                file.getName(), oldSize, position, (System.nanoTime() - started) / 1e6, pause / 1e6);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } finally {
+                if (!swapped) {
+                    out.close();
+                    target.delete();
+                }
+            }
+        }
+    }
+
+    public synchronized int getCompactionCount() {
+        return compactionCount;
+    }
+
+    // Total bytes given back by all compactions so far
+    public synchronized long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    // How long the last compaction held the log lock
+    public synchronized double getLastCompactionPauseMillis() {
+        return lastPauseNanos / 1e6;
+    }
+
+    public synchronized double getMaxCompactionPauseMillis() {
+        return maxPauseNanos / 1e6;
+    }
+
+    // Take the shared lock and pick up what other processes changed since this one last looked
+    private FileLock lockShared() throws IOException {
+        FileLock lock = processLock.shared();
+        try {
+            refresh();
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    private FileLock lockExclusive() throws IOException {
+        FileLock lock = processLock.exclusive();
+        try {
+            refresh();
+            repairTail();
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    // Remap a grown index and reopen the log if another process replaced it
+    private void refresh() throws IOException {
+        index.refresh();
+        if (index.getGeneration() != generation) {
+            channel.close();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            generation = index.getGeneration();
+        }
+    }
+
+    // A writer that died between appending and updating the index leaves records past the log position
+    private void repairTail() throws IOException {
+        if (channel.size() != index.getLogPosition()) {
+            replay(index.getLogPosition());
+        }
+    }
+
+    // Append a record and make it durable before the caller updates the index
+    private long append(byte type, int id, byte[] payload) throws IOException {
+        long offset = channel.size();
+        RecordFormat.writeFully(channel, RecordFormat.frame(type, id, payload), offset);
+        channel.force(false);
+        return offset;
+    }
+
+    private static void copyRange(FileChannel from, long start, long end, FileChannel to, long position) throws IOException {
+        while (start < end) {
+            long copied = from.transferTo(start, end - start, to.position(position));
+            start += copied;
+            position += copied;
+        }
+    }
+
+    private void maybeCheckpoint() {
+        if (++recordsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            index.checkpoint();
+            recordsSinceCheckpoint = 0;
+        }
+    }
+
+    private byte[] readPayload(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        RecordFormat.readFully(channel, buffer, offset);
+        return buffer.array();
+    }
+
+    private static int ownerHash(String userEmail) {
+        return userEmail != null ? userEmail.hashCode() : 0;
+    }
+}
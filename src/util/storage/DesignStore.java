@@ -0,0 +1,44 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * On-disk layout for saved designs.
+ * FileManager talks to one of these; the layout decides how records are laid out in data/.
+ */
+public interface DesignStore extends Closeable {
+    List<Design> readAll() throws IOException;
+
+    // Ids of every stored design in ascending order, for walking the store one design at a time
+    int[] ids() throws IOException;
+
+    Design read(int id) throws IOException;
+
+    List<Design> readByOwner(String userEmail) throws IOException;
+
+    // Name, date, room and furniture count of a user's designs, without decoding their furniture
+    List<DesignSummary> readSummariesByOwner(String userEmail) throws IOException;
+
+    void put(Design design) throws IOException;
+
+    // Store several designs; layouts that can make a batch durable with a single sync override this
+    default void putAll(List<Design> designs) throws IOException {
+        for (Design design : designs) {
+            put(design);
+        }
+    }
+
+    void delete(int id) throws IOException;
+
+    boolean contains(int id);
+
+    int size();
+
+    // Highest id ever stored, including deleted designs
+    int getMaxId();
+}
@@ -0,0 +1,265 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Write-behind queue in front of a DesignStore.
+ * Saves and deletes are handed to a single background thread so callers on the Swing EDT
+ * never wait for disk I/O. A design that is saved again before its previous save reached
+ * the store is written once, with the latest contents, and both callers share one future.
+ *
+ * The writer thread never touches the caller's design. A save's future completes with the stored
+ * copy, which carries the version the store gave it; the caller copies that version back on its
+ * own thread with copyStoredVersion(). Until it has, further saves of the same design object are
+ * based on the stored version, so they do not conflict with their own predecessor. A save the
+ * store rejects as a conflict fails its future with the DesignConflictException.
+ */
+public class DesignWriteQueue {
+    private final DesignStore store;
+    private final Thread worker;
+
+    // Called on the writer thread with each design once it is stored
+    private final Consumer<Design> onStored;
+
+    // Writes not yet started, in submission order, at most one per design id
+    private final Map<Integer, PendingWrite> pending = new LinkedHashMap<>();
+    private PendingWrite inFlight;
+    private boolean closed = false;
+
+    // Version each caller's design was last stored with, until the caller has caught up with it.
+    // Design does not override equals, so entries are per object and go once the design is dropped.
+    private final Map<Design, Integer> storedVersions = new WeakHashMap<>();
+
+    public DesignWriteQueue(DesignStore store) {
+        this(store, design -> {
+        });
+    }
+
+    public DesignWriteQueue(DesignStore store, Consumer<Design> onStored) {
+        this.store = store;
+        this.onStored = onStored;
+        this.worker = new Thread(this::runWorker, "design-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue a save of the design as it is right now.
+     * The design is snapshotted immediately, so later edits do not leak into this write.
+     */
+    public CompletableFuture<Design> save(Design design) {
+        Design snapshot;
+        try {
+            snapshot = DesignCodec.copy(design);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return submit(design.getId(), snapshot, design);
+    }
+
+    public CompletableFuture<Design> delete(int designId) {
+        return submit(designId, null, null);
+    }
+
+    private synchronized CompletableFuture<Design> submit(int designId, Design snapshot, Design source) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Design write queue is closed"));
+        }
+
+        if (source != null) {
+            Integer storedVersion = storedVersions.get(source);
+            if (storedVersion != null && snapshot.getVersion() < storedVersion) {
+                snapshot.setVersion(storedVersion);
+            } else {
+                storedVersions.remove(source);
+            }
+        }
+
+        PendingWrite write = pending.get(designId);
+        if (write != null) {
+            // Merge with the write that is still waiting
+            write.snapshot = snapshot;
+            write.source = source;
+        } else {
+            write = new PendingWrite(designId, snapshot, source);
+            pending.put(designId, write);
+            notifyAll();
+        }
+        return write.future;
+    }
+
+    // Latest queued contents of a design, or null if nothing is queued for it
+    public synchronized Design getPending(int designId) throws IOException {
+        PendingWrite write = latestWrite(designId);
+        return write != null && write.snapshot != null ? DesignCodec.copy(write.snapshot) : null;
+    }
+
+    public synchronized boolean isPendingDelete(int designId) {
+        PendingWrite write = latestWrite(designId);
+        return write != null && write.snapshot == null;
+    }
+
+    /**
+     * Apply queued writes on top of designs read from the store, so callers see their own saves.
+     * Pass an owner email to only bring in queued designs belonging to that user, or null for all.
+     */
+    public synchronized List<Design> overlay(List<Design> stored, String userEmail) throws IOException {
+        return overlay(stored, userEmail, Design::getId, DesignCodec::copy);
+    }
+
+    // The same for summaries, so the dashboard also sees designs that are still being written
+    public synchronized List<DesignSummary> overlaySummaries(List<DesignSummary> stored, String userEmail)
+            throws IOException {
+        return overlay(stored, userEmail, DesignSummary::getId, snapshot -> DesignSummary.of(DesignCodec.copy(snapshot)));
+    }
+
+    private <T> List<T> overlay(List<T> stored, String userEmail, ToIntFunction<T> idOf, Projection<T> projection)
+            throws IOException {
+        if (pending.isEmpty() && inFlight == null) {
+            return stored;
+        }
+
+        Map<Integer, T> items = new LinkedHashMap<>();
+        for (T item : stored) {
+            items.put(idOf.applyAsInt(item), item);
+        }
+
+        List<PendingWrite> writes = new ArrayList<>();
+        if (inFlight != null) {
+            writes.add(inFlight);
+        }
+        writes.addAll(pending.values());
+
+        for (PendingWrite write : writes) {
+            if (write.snapshot == null) {
+                items.remove(write.designId);
+            } else if (userEmail == null || userEmail.equals(write.snapshot.getUserEmail())) {
+                items.put(write.designId, projection.apply(write.snapshot));
+            }
+        }
+
+        List<T> result = new ArrayList<>(items.values());
+        result.sort(Comparator.comparingInt(idOf));
+        return result;
+    }
+
+    // Block until every write accepted so far has reached the store
+    public synchronized void flush() throws InterruptedException {
+        while (!pending.isEmpty() || inFlight != null) {
+            wait();
+        }
+    }
+
+    // Stop accepting writes and wait for the accepted ones to finish
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        worker.join();
+    }
+
+    private synchronized PendingWrite latestWrite(int designId) {
+        PendingWrite write = pending.get(designId);
+        if (write == null && inFlight != null && inFlight.designId == designId) {
+            write = inFlight;
+        }
+        return write;
+    }
+
+    private void runWorker() {
+        while (true) {
+            PendingWrite write;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Keep draining; the queue only stops through close()
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+
+                Integer designId = pending.keySet().iterator().next();
+                write = pending.remove(designId);
+                inFlight = write;
+            }
+
+            try {
+                if (write.snapshot == null) {
+                    store.delete(write.designId);
+                } else {
+                    int basedOn = write.snapshot.getVersion();
+                    store.put(write.snapshot);
+                    advanceVersions(write, basedOn);
+                    onStored.accept(write.snapshot);
+                }
+                write.future.complete(write.snapshot);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error saving design " + write.designId + ": " + e.getMessage());
+                write.future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // Base a later save of the design that is already queued, and later saves of the same object, on the stored version
+    private synchronized void advanceVersions(PendingWrite stored, int basedOn) {
+        int version = stored.snapshot.getVersion();
+        storedVersions.put(stored.source, version);
+
+        PendingWrite next = pending.get(stored.designId);
+        if (next != null && next.snapshot != null && next.snapshot.getVersion() == basedOn) {
+            next.snapshot.setVersion(version);
+        }
+    }
+
+    /**
+     * Give the caller's design the version its save was stored with. Call it on the thread that
+     * owns the design, e.g. the event dispatch thread, once the save's future has completed.
+     */
+    public static void copyStoredVersion(Design stored, Design design) {
+        if (stored != null && stored.getVersion() > design.getVersion()) {
+            design.setVersion(stored.getVersion());
+        }
+    }
+
+    // Turns a queued snapshot into what the caller asked the store for
+    private interface Projection<T> {
+        T apply(Design snapshot) throws IOException;
+    }
+
+    // A queued save (snapshot set) or delete (snapshot null)
+    private static class PendingWrite {
+        final int designId;
+        final CompletableFuture<Design> future = new CompletableFuture<>();
+        Design snapshot;
+
+        // The design the caller passed in; only compared, never read or changed on the writer thread
+        Design source;
+
+        PendingWrite(int designId, Design snapshot, Design source) {
+            this.designId = designId;
+            this.snapshot = snapshot;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package util.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, monotonic id allocator.
+ * Ids are handed out from a block held in memory; only the end of the block is written to
+ * disk, once per BLOCK_SIZE ids. The file is locked while a block is claimed, so two
+ * application instances sharing a data directory never receive the same id. Ids left over
+ * in a block when the application exits are skipped, never reused.
+ *
+ * The end is written to two slots in turn, always overwriting the one with the older value, so
+ * a write torn by a crash leaves the other slot's boundary readable. None of the ids in a block
+ * are handed out before its end is on disk, so falling back to the older boundary is safe.
+ *
+ * File layout: two slots of magic (4) + end of a claimed block (8) + CRC32 of the end (4).
+ */
+public class IdSequence implements Closeable {
+    private static final int MAGIC = 0x52445351; // "RDSQ"
+    private static final int SLOT_SIZE = 16;
+    private static final int SLOT_COUNT = 2;
+    private static final int BLOCK_SIZE = 64;
+
+    private final File file;
+    private final FileChannel channel;
+
+    // Lowest id this sequence may hand out, e.g. one past the highest id already stored
+    private final long floor;
+    private long next = 0;
+    private long limit = 0;
+
+    private IdSequence(File file, FileChannel channel, long floor) {
+        this.file = file;
+        this.channel = channel;
+        this.floor = floor;
+    }
+
+    public static IdSequence open(File file, long floor) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new IdSequence(file, channel, floor);
+    }
+
+    public synchronized int next() throws IOException {
+        if (next >= limit) {
+            claimBlock();
+        }
+        if (next > Integer.MAX_VALUE) {
+            throw new IOException("Design ids exhausted");
+        }
+        return (int) next++;
+    }
+
+    private void claimBlock() throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            long[] slots = readSlots();
+            int newest = slots[1] > slots[0] ? 1 : 0;
+            long start = Math.max(slots[newest], floor);
+            long end = start + BLOCK_SIZE;
+
+            ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+            buffer.putInt(MAGIC).putLong(end).putInt(checksum(end));
+            buffer.flip();
+            RecordFormat.writeFully(channel, buffer, (long) (1 - newest) * SLOT_SIZE);
+            channel.force(false);
+
+            next = start;
+            limit = end;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Block end held by each slot, 0 for a slot that was never written or is unreadable
+    private long[] readSlots() throws IOException {
+        long[] boundaries = new long[SLOT_COUNT];
+        boolean readable = false;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            boundaries[slot] = readSlot(slot);
+            readable |= boundaries[slot] > 0;
+        }
+        if (!readable && channel.size() > 0) {
+            System.err.println("Ignoring unreadable id sequence " + file.getName() + ", continuing after the stored designs");
+        }
+        return boundaries;
+    }
+
+    private long readSlot(int slot) throws IOException {
+        long position = (long) slot * SLOT_SIZE;
+        if (channel.size() < position + SLOT_SIZE) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+        RecordFormat.readFully(channel, buffer, position);
+        buffer.flip();
+
+        int magic = buffer.getInt();
+        long boundary = buffer.getLong();
+        if (magic != MAGIC || buffer.getInt() != checksum(boundary)) {
+            return 0;
+        }
+        return boundary;
+    }
+
+    private static int checksum(long value) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(value).array());
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
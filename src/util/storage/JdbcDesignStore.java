@@ -0,0 +1,252 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Design store in an embedded SQL database reached through JDBC, H2 by default.
+ * Each design is one row holding its DesignCodec encoding, its version and its owner's email,
+ * which is indexed so listing a user's designs is an index lookup rather than a scan.
+ * The version check of put() is part of the UPDATE itself, so a stale save changes no row.
+ *
+ * An embedded database is opened by one process at a time, like the sharded and compressed layouts.
+ */
+public class JdbcDesignStore implements DesignStore {
+    private static final String MAX_ID_COUNTER = "max_design_id";
+
+    private final Connection connection;
+
+    private JdbcDesignStore(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static JdbcDesignStore open(String url) throws IOException {
+        Connection connection = JdbcSupport.connect(url);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS designs ("
+                        + "id INT PRIMARY KEY, user_email VARCHAR, version INT NOT NULL, data BLOB NOT NULL)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS designs_user_email ON designs (user_email)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS store_counters ("
+                        + "name VARCHAR PRIMARY KEY, counter INT NOT NULL)");
+            }
+            JdbcSupport.ensureCounter(connection, MAX_ID_COUNTER);
+            connection.commit();
+            return new JdbcDesignStore(connection);
+        } catch (SQLException e) {
+            JdbcSupport.closeQuietly(connection);
+            throw JdbcSupport.failure("Cannot create design tables in " + url, e);
+        }
+    }
+
+    @Override
+    public synchronized List<Design> readAll() throws IOException {
+        return readDesigns("SELECT data FROM designs ORDER BY id", null);
+    }
+
+    @Override
+    public synchronized int[] ids() throws IOException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT id FROM designs ORDER BY id");
+             ResultSet rows = select.executeQuery()) {
+            List<Integer> ids = new ArrayList<>();
+            while (rows.next()) {
+                ids.add(rows.getInt(1));
+            }
+            return ids.stream().mapToInt(Integer::intValue).toArray();
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot list designs", e);
+        }
+    }
+
+    @Override
+    public synchronized Design read(int id) throws IOException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT data FROM designs WHERE id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? DesignCodec.decode(rows.getBytes(1)) : null;
+            }
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot read design " + id, e);
+        }
+    }
+
+    @Override
+    public synchronized List<Design> readByOwner(String userEmail) throws IOException {
+        return readDesigns("SELECT data FROM designs WHERE user_email = ? ORDER BY id", userEmail);
+    }
+
+    @Override
+    public synchronized List<DesignSummary> readSummariesByOwner(String userEmail) throws IOException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT data FROM designs WHERE user_email = ? ORDER BY id")) {
+            select.setString(1, userEmail);
+            try (ResultSet rows = select.executeQuery()) {
+                List<DesignSummary> summaries = new ArrayList<>();
+                while (rows.next()) {
+                    summaries.add(DesignCodec.decodeSummary(rows.getBytes(1)));
+                }
+                return summaries;
+            }
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot read designs of " + userEmail, e);
+        }
+    }
+
+    // Save the design if it is based on the stored version; see DesignLog.put
+    @Override
+    public synchronized void put(Design design) throws IOException {
+        List<Design> designs = new ArrayList<>(1);
+        designs.add(design);
+        putAll(designs);
+    }
+
+    // All designs are written in one transaction, and none if any of them conflicts
+    @Override
+    public synchronized void putAll(List<Design> designs) throws IOException {
+        int[] storedVersions = new int[designs.size()];
+        int checked = 0;
+        try {
+            for (Design design : designs) {
+                storedVersions[checked] = storedVersion(design.getId());
+                DesignConflictException.checkAndAdvance(design, storedVersions[checked]);
+                checked++;
+                write(design, storedVersions[checked - 1]);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            undo(designs, storedVersions, checked);
+            throw JdbcSupport.failure("Cannot save designs", e);
+        } catch (IOException | RuntimeException e) {
+            undo(designs, storedVersions, checked);
+            throw e;
+        }
+    }
+
+    // Nothing was stored, so the designs go back to the versions they were based on
+    private void undo(List<Design> designs, int[] storedVersions, int checked) {
+        JdbcSupport.rollbackQuietly(connection);
+        for (int i = 0; i < checked; i++) {
+            designs.get(i).setVersion(storedVersions[i]);
+        }
+    }
+
+    @Override
+    public synchronized void delete(int id) throws IOException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM designs WHERE id = ?")) {
+            delete.setInt(1, id);
+            delete.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            JdbcSupport.rollbackQuietly(connection);
+            throw JdbcSupport.failure("Cannot delete design " + id, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(int id) {
+        try (PreparedStatement select = connection.prepareStatement("SELECT 1 FROM designs WHERE id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error looking up design " + id + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM designs")) {
+            rows.next();
+            return rows.getInt(1);
+        } catch (SQLException e) {
+            System.err.println("Error counting designs: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized int getMaxId() {
+        try {
+            return JdbcSupport.readCounter(connection, MAX_ID_COUNTER);
+        } catch (SQLException e) {
+            System.err.println("Error reading highest design id: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot close design database", e);
+        }
+    }
+
+    private List<Design> readDesigns(String query, String userEmail) throws IOException {
+        try (PreparedStatement select = connection.prepareStatement(query)) {
+            if (userEmail != null) {
+                select.setString(1, userEmail);
+            }
+            try (ResultSet rows = select.executeQuery()) {
+                List<Design> designs = new ArrayList<>();
+                while (rows.next()) {
+                    designs.add(DesignCodec.decode(rows.getBytes(1)));
+                }
+                return designs;
+            }
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot read designs", e);
+        }
+    }
+
+    // Stored version of a design, 0 if it is not stored
+    private int storedVersion(int id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT version FROM designs WHERE id = ?")) {
+            select.setInt(1, id);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? rows.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void write(Design design, int storedVersion) throws SQLException, IOException {
+        byte[] data = DesignCodec.encode(design);
+        if (storedVersion == 0) {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO designs (id, user_email, version, data) VALUES (?, ?, ?, ?)")) {
+                insert.setInt(1, design.getId());
+                insert.setString(2, design.getUserEmail());
+                insert.setInt(3, design.getVersion());
+                insert.setBytes(4, data);
+                insert.executeUpdate();
+            }
+            JdbcSupport.raiseCounter(connection, MAX_ID_COUNTER, design.getId());
+            return;
+        }
+
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE designs SET user_email = ?, version = ?, data = ? WHERE id = ? AND version = ?")) {
+            update.setString(1, design.getUserEmail());
+            update.setInt(2, design.getVersion());
+            update.setBytes(3, data);
+            update.setInt(4, design.getId());
+            update.setInt(5, storedVersion);
+            if (update.executeUpdate() == 0) {
+                throw new DesignConflictException(design.getId(), storedVersion, storedVersion(design.getId()));
+            }
+        }
+    }
+}
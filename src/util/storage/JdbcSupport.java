@@ -0,0 +1,86 @@
+package util.storage;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Connection and counter helpers shared by the JDBC stores.
+ */
+final class JdbcSupport {
+    private JdbcSupport() {
+    }
+
+    // Connections run without autocommit; each store commits once per write
+    static Connection connect(String url) throws IOException {
+        try {
+            Connection connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException e) {
+            throw failure("Cannot open database " + url + " (is its JDBC driver on the classpath?)", e);
+        }
+    }
+
+    static IOException failure(String message, SQLException e) {
+        return new IOException(message + ": " + e.getMessage(), e);
+    }
+
+    static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Error rolling back database transaction: " + e.getMessage());
+        }
+    }
+
+    static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+
+    // Counters live in the store_counters table and start at 0
+    static void ensureCounter(Connection connection, String name) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT 1 FROM store_counters WHERE name = ?")) {
+            select.setString(1, name);
+            try (ResultSet rows = select.executeQuery()) {
+                if (rows.next()) {
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO store_counters (name, counter) VALUES (?, 0)")) {
+            insert.setString(1, name);
+            insert.executeUpdate();
+        }
+    }
+
+    static int readCounter(Connection connection, String name) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT counter FROM store_counters WHERE name = ?")) {
+            select.setString(1, name);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? rows.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Raise the counter to value if it is lower, as part of the caller's transaction
+    static void raiseCounter(Connection connection, String name, int value) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE store_counters SET counter = ? WHERE name = ? AND counter < ?")) {
+            update.setInt(1, value);
+            update.setString(2, name);
+            update.setInt(3, value);
+            update.executeUpdate();
+        }
+    }
+}
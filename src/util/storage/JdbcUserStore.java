@@ -0,0 +1,190 @@
+package util.storage;
+
+import model.User;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * User store in an embedded SQL database reached through JDBC, next to JdbcDesignStore.
+ * A user's design ids are rows of their own, keyed by email and kept in the order they were
+ * added, so changing an account rewrites only that account's rows.
+ */
+public class JdbcUserStore implements UserStore {
+    private final Connection connection;
+
+    private JdbcUserStore(Connection connection) {
+        this.connection = connection;
+    }
+
+    public static JdbcUserStore open(String url) throws IOException {
+        Connection connection = JdbcSupport.connect(url);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS users ("
+                        + "email VARCHAR PRIMARY KEY, password VARCHAR NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS user_designs ("
+                        + "email VARCHAR NOT NULL, position INT NOT NULL, design_id INT NOT NULL, "
+                        + "PRIMARY KEY (email, position))");
+            }
+            connection.commit();
+            return new JdbcUserStore(connection);
+        } catch (SQLException e) {
+            JdbcSupport.closeQuietly(connection);
+            throw JdbcSupport.failure("Cannot create user tables in " + url, e);
+        }
+    }
+
+    @Override
+    public synchronized User read(String email) throws IOException {
+        try {
+            return readUser(email, false);
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot read user " + email, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean putIfAbsent(User user) throws IOException {
+        try {
+            if (readUser(user.getEmail(), true) != null) {
+                connection.rollback();
+                return false;
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO users (email, password) VALUES (?, ?)")) {
+                insert.setString(1, user.getEmail());
+                insert.setString(2, user.getPassword());
+                insert.executeUpdate();
+            }
+            writeDesignIds(user);
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            JdbcSupport.rollbackQuietly(connection);
+            throw JdbcSupport.failure("Cannot add user " + user.getEmail(), e);
+        }
+    }
+
+    // The user's row is locked from the read to the commit
+    @Override
+    public synchronized User update(String email, Consumer<User> change) throws IOException {
+        try {
+            User user = readUser(email, true);
+            if (user == null) {
+                connection.rollback();
+                return null;
+            }
+            change.accept(user);
+            user.setEmail(email);
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE users SET password = ? WHERE email = ?")) {
+                update.setString(1, user.getPassword());
+                update.setString(2, email);
+                update.executeUpdate();
+            }
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM user_designs WHERE email = ?")) {
+                delete.setString(1, email);
+                delete.executeUpdate();
+            }
+            writeDesignIds(user);
+            connection.commit();
+            return user;
+        } catch (SQLException e) {
+            JdbcSupport.rollbackQuietly(connection);
+            throw JdbcSupport.failure("Cannot update user " + email, e);
+        } catch (RuntimeException e) {
+            JdbcSupport.rollbackQuietly(connection);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized Map<String, User> readAll() throws IOException {
+        Map<String, User> users = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT email, password FROM users ORDER BY email")) {
+                while (rows.next()) {
+                    users.put(rows.getString(1), new User(rows.getString(1), rows.getString(2)));
+                }
+            }
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT email, design_id FROM user_designs ORDER BY email, position")) {
+                while (rows.next()) {
+                    User user = users.get(rows.getString(1));
+                    if (user != null) {
+                        user.addDesignId(rows.getInt(2));
+                    }
+                }
+            }
+            return users;
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot read users", e);
+        }
+    }
+
+    @Override
+    public synchronized int size() throws IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM users")) {
+            rows.next();
+            return rows.getInt(1);
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot count users", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw JdbcSupport.failure("Cannot close user database", e);
+        }
+    }
+
+    private User readUser(String email, boolean forUpdate) throws SQLException {
+        User user;
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT password FROM users WHERE email = ?" + (forUpdate ? " FOR UPDATE" : ""))) {
+            select.setString(1, email);
+            try (ResultSet rows = select.executeQuery()) {
+                if (!rows.next()) {
+                    return null;
+                }
+                user = new User(email, rows.getString(1));
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT design_id FROM user_designs WHERE email = ? ORDER BY position")) {
+            select.setString(1, email);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    user.addDesignId(rows.getInt(1));
+                }
+            }
+        }
+        return user;
+    }
+
+    private void writeDesignIds(User user) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO user_designs (email, position, design_id) VALUES (?, ?, ?)")) {
+            int position = 0;
+            for (int designId : user.getDesignIds()) {
+                insert.setString(1, user.getEmail());
+                insert.setInt(2, position++);
+                insert.setInt(3, designId);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package util.storage;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Low-priority background thread that compacts a DesignLog once enough of it is garbage.
+ * The log is checked on a fixed delay; compaction itself only blocks readers and writers
+ * for the final swap, see DesignLog.compact().
+ */
+public class LogCompactor {
+    private static final long CHECK_INTERVAL_SECONDS = 30;
+
+    private final DesignLog log;
+    private final ScheduledExecutorService executor;
+
+    public LogCompactor(DesignLog log) {
+        this.log = log;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "design-log-compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactIfNeeded,
+                CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Ask for a check now instead of waiting for the next scheduled one
+    public void requestCheck() {
+        executor.execute(this::compactIfNeeded);
+    }
+
+    private void compactIfNeeded() {
+        if (!log.needsCompaction()) {
+            return;
+        }
+        try {
+            log.compact();
+            System.out.printf("[LogCompactor] %d compactions, %d bytes reclaimed, last pause %.1f ms, max pause %.1f ms%n",
+                    log.getCompactionCount(), log.getReclaimedBytes(),
+                    log.getLastCompactionPauseMillis(), log.getMaxCompactionPauseMillis());
+        } catch (IOException e) {
+            System.err.println("Error compacting design log: " + e.getMessage());
+        }
+    }
+
+    // Stop scheduling and let a running compaction finish; interrupting it would close the log's channel
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,76 @@
+package util.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Coordinates application instances that share a store through a lock file next to it.
+ * Byte 0 is the operation lock, held shared while reading and exclusively while writing.
+ * Byte 1 is held shared by every process that has the store open, so the process opening or
+ * closing the store can tell whether it is the only one.
+ *
+ * File locks belong to the whole JVM, so callers must not take two of them at once;
+ * the stores only lock while holding their own monitor.
+ */
+final class ProcessLock implements Closeable {
+    private final FileChannel channel;
+    private FileLock presence;
+
+    private ProcessLock(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static ProcessLock open(File file) throws IOException {
+        return new ProcessLock(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    FileLock shared() throws IOException {
+        return channel.lock(0, 1, true);
+    }
+
+    FileLock exclusive() throws IOException {
+        return channel.lock(0, 1, false);
+    }
+
+    // True if no other process has the store open; call before join() or after leave()
+    boolean isOnlyProcess() throws IOException {
+        FileLock probe = channel.tryLock(1, 1, false);
+        if (probe == null) {
+            return false;
+        }
+        probe.release();
+        return true;
+    }
+
+    /**
+     * Open the store for this process alone, for stores that keep their index in memory.
+     * Returns false if another process already has it open.
+     */
+    boolean claim() throws IOException {
+        presence = channel.tryLock(1, 1, false);
+        return presence != null;
+    }
+
+    // Announce that this process has the store open
+    void join() throws IOException {
+        presence = channel.lock(1, 1, true);
+    }
+
+    void leave() throws IOException {
+        if (presence != null) {
+            presence.release();
+            presence = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        leave();
+        channel.close();
+    }
+}
@@ -0,0 +1,180 @@
+package util.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Framing shared by the design log, the write-ahead journal and the design history.
+ * A file starts with a magic number and format version; each record is
+ * type (1) + design id (4) + payload length (4) + CRC32 (4) followed by the payload.
+ * The checksum covers type, id and payload, so a torn or corrupted record is detected on replay.
+ */
+final class RecordFormat {
+    static final int FILE_HEADER_SIZE = 8;
+    static final int HEADER_SIZE = 13;
+    static final int VERSION = 1;
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    // Design history records
+    static final byte CHUNK = 3;
+    static final byte REVISION = 4;
+
+    private RecordFormat() {
+    }
+
+    static ByteBuffer frame(byte type, int id, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.put(type).putInt(id).putInt(payload.length).putInt(checksum(type, id, payload)).put(payload);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Read the record starting at the given position.
+     * Returns null if the record runs past the end of the file or fails its checksum.
+     */
+    static Record read(FileChannel channel, long position, long size) throws IOException {
+        if (position + HEADER_SIZE > size) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, position);
+        header.flip();
+
+        byte type = header.get();
+        int id = header.getInt();
+        int length = header.getInt();
+        int crc = header.getInt();
+
+        if (type < PUT || type > REVISION || length < 0 || position + HEADER_SIZE + length > size) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + HEADER_SIZE);
+        if (checksum(type, id, payload.array()) != crc) {
+            return null;
+        }
+        return new Record(type, id, payload.array(), position);
+    }
+
+    /**
+     * Whether the unreadable bytes from the position to the end of the file can only be a write
+     * a crash cut short: a record that runs up to or past the end, or space the file system added
+     * but never filled, which reads as zeros. Anything else is damage inside the file with records
+     * after it, which must not be cut off.
+     */
+    static boolean isTornTail(FileChannel channel, long position, long size) throws IOException {
+        if (position + HEADER_SIZE > size) {
+            return true;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, position);
+        int length = header.getInt(5);
+        if (length >= 0 && position + HEADER_SIZE + length >= size) {
+            return true;
+        }
+
+        ByteBuffer rest = ByteBuffer.allocate((int) Math.min(size - position, 64 * 1024));
+        for (long at = position; at < size; at += rest.capacity()) {
+            rest.clear();
+            rest.limit((int) Math.min(rest.capacity(), size - at));
+            readFully(channel, rest, at);
+            for (int i = 0; i < rest.limit(); i++) {
+                if (rest.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Cut off a torn record at the end of the file; fail instead if valid records may follow the bad one
+    static void truncateTornTail(FileChannel channel, long position, String fileName) throws IOException {
+        long size = channel.size();
+        if (position >= size) {
+            return;
+        }
+        if (!isTornTail(channel, position, size)) {
+            throw new IOException("Corrupt record at offset " + position + " of " + fileName + ", followed by "
+                    + (size - position) + " bytes that may hold valid records; restore the file from a backup");
+        }
+        System.err.println("Discarding " + (size - position) + " bytes of incomplete records from " + fileName);
+        channel.truncate(position);
+        channel.force(true);
+    }
+
+    static void writeFileHeader(FileChannel channel, int magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(magic).putInt(VERSION);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    // Format version of the file, or -1 if it does not start with the given magic number
+    static int readFileVersion(FileChannel channel, int magic) throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        return header.getInt() == magic ? header.getInt() : -1;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of record file");
+            }
+            position += read;
+        }
+    }
+
+    private static int checksum(byte type, int id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(id >>> 24);
+        crc.update(id >>> 16);
+        crc.update(id >>> 8);
+        crc.update(id);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // One decoded record and where it starts in its file
+    static class Record {
+        final byte type;
+        final int id;
+        final byte[] payload;
+        final long position;
+
+        Record(byte type, int id, byte[] payload, long position) {
+            this.type = type;
+            this.id = id;
+            this.payload = payload;
+            this.position = position;
+        }
+
+        long payloadOffset() {
+            return position + HEADER_SIZE;
+        }
+
+        long end() {
+            return position + HEADER_SIZE + payload.length;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package util.storage;
+
+import model.Design;
+import model.DesignSummary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Design store with one file per design plus a small directory index.
+ * The index maps each design id to its owner, name, creation date, stored version and file,
+ * so opening or saving one design only touches that design's bytes.
+ *
+ * Each change is first appended to a write-ahead journal and fsynced, then applied with an
+ * atomic file replace. The index is only rewritten at checkpoints; on open, complete journal
+ * entries written since the last checkpoint are replayed.
+ *
+ * The index lives in memory, so only one process can have the store open at a time.
+ */
+public class ShardedDesignStore implements DesignStore {
+    private static final String INDEX_FILE = "index.dat";
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String LOCK_FILE = "store.lock";
+    private static final int JOURNAL_MAGIC = 0x52444A4E; // "RDJN"
+    private static final int INDEX_MAGIC = 0x52444958; // "RDIX"
+    private static final int INDEX_VERSION = 1;
+
+    // Presence flags for the nullable fields of an index entry
+    private static final int HAS_NAME = 1;
+    private static final int HAS_EMAIL = 1 << 1;
+    private static final int HAS_CREATION_DATE = 1 << 2;
+
+    // Rewrite the index after this many journaled changes
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    private final File directory;
+    private final ProcessLock processLock;
+    private final Map<Integer, IndexEntry> index = new LinkedHashMap<>();
+    private int maxId = 0;
+
+    private FileChannel journal;
+    private int changesSinceCheckpoint = 0;
+
+    private ShardedDesignStore(File directory, ProcessLock processLock) {
+        this.directory = directory;
+        this.processLock = processLock;
+    }
+
+    public static ShardedDesignStore open(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create design directory " + directory);
+        }
+        ProcessLock processLock = ProcessLock.open(new File(directory, LOCK_FILE));
+        try {
+            if (!processLock.claim()) {
+                throw new IOException("Design directory " + directory + " is in use by another process");
+            }
+            ShardedDesignStore store = new ShardedDesignStore(directory, processLock);
+            store.loadIndex();
+            store.recover();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            processLock.close();
+            throw e;
+        }
+    }
+
+    // Re-apply complete journal entries written after the last index checkpoint
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+        journal = FileChannel.open(new File(directory, JOURNAL_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int replayed = 0;
+        long size = journal.size();
+        if (RecordFormat.readFileVersion(journal, JOURNAL_MAGIC) == RecordFormat.VERSION) {
+            long position = RecordFormat.FILE_HEADER_SIZE;
+            RecordFormat.Record record;
+            while ((record = RecordFormat.read(journal, position, size)) != null) {
+                if (record.type == RecordFormat.PUT) {
+                    applyPut(DesignCodec.decode(record.payload), record.payload);
+                } else {
+                    applyDelete(record.id);
+                }
+                position = record.end();
+                replayed++;
+            }
+            if (position < size) {
+                System.err.println("Discarding " + (size - position) + " bytes of incomplete journal entries");
+            }
+        }
+
+        checkpoint();
+        System.out.printf("[ShardedDesignStore] Replayed %d journal entries (%d bytes) in %.1f ms%n",
+                replayed, size, (System.nanoTime() - started) / 1e6);
+    }
+
+    @Override
+    public synchronized List<Design> readAll() throws IOException {
+        List<Design> designs = new ArrayList<>(index.size());
+        for (IndexEntry entry : index.values()) {
+            designs.add(readShard(entry));
+        }
+        return designs;
+    }
+
+    @Override
+    public synchronized int[] ids() {
+        return index.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    @Override
+    public synchronized Design read(int id) throws IOException {
+        IndexEntry entry = index.get(id);
+        if (entry == null) {
+            return null;
+        }
+        return readShard(entry);
+    }
+
+    @Override
+    public synchronized List<Design> readByOwner(String userEmail) throws IOException {
+        List<Design> designs = new ArrayList<>();
+        for (IndexEntry entry : index.values()) {
+            // The owner is in the index, so other users' shards are never opened
+            if (Objects.equals(entry.userEmail, userEmail)) {
+                designs.add(readShard(entry));
+            }
+        }
+        return designs;
+    }
+
+    @Override
+    public synchronized List<DesignSummary> readSummariesByOwner(String userEmail) throws IOException {
+        List<DesignSummary> summaries = new ArrayList<>();
+        for (IndexEntry entry : index.values()) {
+            if (Objects.equals(entry.userEmail, userEmail)) {
+                summaries.add(readShardSummary(entry));
+            }
+        }
+        return summaries;
+    }
+
+    // Save the design if it is based on the stored version; see DesignLog.put
+    @Override
+    public synchronized void put(Design design) throws IOException {
+        // The stored version is in the index, so the shard is not read just to check it
+        IndexEntry stored = index.get(design.getId());
+        int storedVersion = stored != null ? stored.version : 0;
+        DesignConflictException.checkAndAdvance(design, storedVersion);
+        try {
+            byte[] payload = DesignCodec.encode(design);
+            appendToJournal(RecordFormat.PUT, design.getId(), payload);
+            applyPut(design, payload);
+        } catch (IOException | RuntimeException e) {
+            design.setVersion(storedVersion);
+            throw e;
+        }
+        maybeCheckpoint();
+    }
+
+    @Override
+    public synchronized void delete(int id) throws IOException {
+        if (!index.containsKey(id)) {
+            return;
+        }
+        appendToJournal(RecordFormat.DELETE, id, new byte[0]);
+        applyDelete(id);
+        maybeCheckpoint();
+    }
+
+    @Override
+    public synchronized boolean contains(int id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized int getMaxId() {
+        return maxId;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            checkpoint();
+            journal.close();
+        } finally {
+            processLock.close();
+        }
+    }
+
+    private void appendToJournal(byte type, int id, byte[] payload) throws IOException {
+        RecordFormat.writeFully(journal, RecordFormat.frame(type, id, payload), journal.size());
+        journal.force(false);
+    }
+
+    private void applyPut(Design design, byte[] payload) throws IOException {
+        IndexEntry entry = new IndexEntry(design.getId(), design.getUserEmail(), design.getName(),
+                design.getCreationDate(), design.getVersion(), shardName(design.getId()));
+
+        AtomicFiles.write(new File(directory, entry.fileName), payload);
+
+        index.put(entry.id, entry);
+        maxId = Math.max(maxId, entry.id);
+    }
+
+    private void applyDelete(int id) throws IOException {
+        IndexEntry entry = index.remove(id);
+        if (entry != null) {
+            Files.deleteIfExists(new File(directory, entry.fileName).toPath());
+        }
+    }
+
+    private void maybeCheckpoint() throws IOException {
+        if (++changesSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    // Persist the index, after which the journal entries it covers are no longer needed
+    private void checkpoint() throws IOException {
+        saveIndex();
+        journal.truncate(0);
+        RecordFormat.writeFileHeader(journal, JOURNAL_MAGIC);
+        journal.force(true);
+        changesSinceCheckpoint = 0;
+    }
+
+    private Design readShard(IndexEntry entry) throws IOException {
+        return DesignCodec.decode(Files.readAllBytes(new File(directory, entry.fileName).toPath()));
+    }
+
+    // Reads only the start of the shard unless it is too short to hold the summary fields
+    private DesignSummary readShardSummary(IndexEntry entry) throws IOException {
+        File shard = new File(directory, entry.fileName);
+        try (FileChannel channel = FileChannel.open(shard.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > DesignCodec.SUMMARY_PREFIX_SIZE) {
+                ByteBuffer prefix = ByteBuffer.allocate(DesignCodec.SUMMARY_PREFIX_SIZE);
+                RecordFormat.readFully(channel, prefix, 0);
+                DesignSummary summary = DesignCodec.decodeSummaryPrefix(prefix.array());
+                if (summary != null) {
+                    return summary;
+                }
+            }
+        }
+        return DesignCodec.decodeSummary(Files.readAllBytes(shard.toPath()));
+    }
+
+    private static String shardName(int id) {
+        return "design-" + id + ".dat";
+    }
+
+    private void loadIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Not a design index: " + indexFile);
+            }
+            int version = in.readInt();
+            if (version != INDEX_VERSION) {
+                throw new IOException("Unsupported design index version " + version);
+            }
+
+            maxId = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                int flags = in.readUnsignedByte();
+                String userEmail = (flags & HAS_EMAIL) != 0 ? in.readUTF() : null;
+                String name = (flags & HAS_NAME) != 0 ? in.readUTF() : null;
+                Date creationDate = (flags & HAS_CREATION_DATE) != 0 ? new Date(in.readLong()) : null;
+                IndexEntry entry = new IndexEntry(id, userEmail, name, creationDate, in.readInt(), in.readUTF());
+                index.put(entry.id, entry);
+                maxId = Math.max(maxId, entry.id);
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(maxId);
+            out.writeInt(index.size());
+            for (IndexEntry entry : index.values()) {
+                out.writeInt(entry.id);
+                out.writeByte((entry.name != null ? HAS_NAME : 0)
+                        | (entry.userEmail != null ? HAS_EMAIL : 0)
+                        | (entry.creationDate != null ? HAS_CREATION_DATE : 0));
+                if (entry.userEmail != null) {
+                    out.writeUTF(entry.userEmail);
+                }
+                if (entry.name != null) {
+                    out.writeUTF(entry.name);
+                }
+                if (entry.creationDate != null) {
+                    out.writeLong(entry.creationDate.getTime());
+                }
+                out.writeInt(entry.version);
+                out.writeUTF(entry.fileName);
+            }
+        }
+        AtomicFiles.write(new File(directory, INDEX_FILE), bytes.toByteArray());
+    }
+
+    // One line of the directory index
+    private static class IndexEntry {
+        final int id;
+        final String userEmail;
+        final String name;
+        final Date creationDate;
+        final int version;
+        final String fileName;
+
+        IndexEntry(int id, String userEmail, String name, Date creationDate, int version, String fileName) {
+            this.id = id;
+            this.userEmail = userEmail;
+            this.name = name;
+            this.creationDate = creationDate;
+            this.version = version;
+            this.fileName = fileName;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package util.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A way of storing designs and users under the data directory, chosen by name with the
+ * roomdesigner.storage system property. The built-in backends are listed in util.StorageBackends;
+ * others can be added by naming their class in META-INF/services/util.storage.StorageBackend.
+ */
+public interface StorageBackend {
+    // Name used to select this backend
+    String getName();
+
+    DesignStore openDesignStore(File dataDirectory) throws IOException;
+
+    UserStore openUserStore(File dataDirectory) throws IOException;
+}
@@ -0,0 +1,209 @@
+package util.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped open-addressing hash table from email hash to the latest user record in the
+ * user log. Slots are probed linearly; users are never removed, so no tombstones are needed.
+ * Several emails can share a hash, so callers confirm a match against the record itself.
+ *
+ * Layout: 32-byte header, then one 16-byte slot per entry: email hash (4) + record length (4)
+ * + payload offset in the log (8). An offset of 0 marks an empty slot.
+ */
+class UserIndex implements Closeable {
+    private static final int MAGIC = 0x52445549; // "RDUI"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_CLEAN = 16;
+    private static final int H_LOG_POSITION = 24;
+
+    // Slot fields
+    private static final int S_HASH = 0;
+    private static final int S_LENGTH = 4;
+    private static final int S_OFFSET = 8;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    private UserIndex(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static UserIndex open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        UserIndex index = new UserIndex(channel);
+
+        if (channel.size() >= HEADER_SIZE) {
+            index.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            index.capacity = index.buffer.getInt(H_CAPACITY);
+        }
+        if (index.buffer == null
+                || index.buffer.getInt(H_MAGIC) != MAGIC
+                || index.buffer.getInt(H_VERSION) != VERSION
+                || index.capacity <= 0
+                || slotPosition(index.capacity) > channel.size()) {
+            index.reset();
+        }
+        return index;
+    }
+
+    // Pick up a table that another process grew
+    void refresh() throws IOException {
+        int sharedCapacity = buffer.getInt(H_CAPACITY);
+        if (sharedCapacity != capacity) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(sharedCapacity));
+            capacity = sharedCapacity;
+        }
+    }
+
+    // True if the index was closed cleanly and covers no more than the given log length
+    boolean isConsistentWith(long logSize) {
+        return buffer.getInt(H_CLEAN) == 1 && getLogPosition() <= logSize;
+    }
+
+    // Drop every entry; the caller rebuilds by replaying the log from the start
+    void reset() throws IOException {
+        capacity = INITIAL_CAPACITY;
+        channel.truncate(0);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(capacity));
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putInt(H_CAPACITY, capacity);
+        buffer.putInt(H_COUNT, 0);
+        buffer.putInt(H_CLEAN, 0);
+        buffer.putLong(H_LOG_POSITION, 0L);
+    }
+
+    void setClean(boolean clean) {
+        buffer.putInt(H_CLEAN, clean ? 1 : 0);
+        buffer.force();
+    }
+
+    // Length of the log already reflected in this index
+    long getLogPosition() {
+        return buffer.getLong(H_LOG_POSITION);
+    }
+
+    void setLogPosition(long position) {
+        buffer.putLong(H_LOG_POSITION, position);
+    }
+
+    int size() {
+        return buffer.getInt(H_COUNT);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Slot where probing for the given hash starts
+    int home(int hash) {
+        return Math.floorMod(hash * 0x9E3779B9, capacity);
+    }
+
+    int next(int slot) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    boolean isEmpty(int slot) {
+        return offset(slot) == 0;
+    }
+
+    int hash(int slot) {
+        return buffer.getInt(slotPosition(slot) + S_HASH);
+    }
+
+    long offset(int slot) {
+        return buffer.getLong(slotPosition(slot) + S_OFFSET);
+    }
+
+    int length(int slot) {
+        return buffer.getInt(slotPosition(slot) + S_LENGTH);
+    }
+
+    // Point an occupied slot at a newer record of the same user
+    void update(int slot, long offset, int length) {
+        int position = slotPosition(slot);
+        buffer.putInt(position + S_LENGTH, length);
+        buffer.putLong(position + S_OFFSET, offset);
+    }
+
+    // Fill an empty slot; the offset goes last so a half-written slot still reads as empty
+    void insert(int slot, int hash, long offset, int length) {
+        int position = slotPosition(slot);
+        buffer.putInt(position + S_HASH, hash);
+        buffer.putInt(position + S_LENGTH, length);
+        buffer.putLong(position + S_OFFSET, offset);
+        buffer.putInt(H_COUNT, size() + 1);
+    }
+
+    /**
+     * Double the table once it is half full, so probe chains stay short.
+     * Slot numbers from before the call are no longer valid afterwards.
+     */
+    void ensureRoomForOne() throws IOException {
+        if ((size() + 1) * 2 <= capacity) {
+            return;
+        }
+
+        int oldCapacity = capacity;
+        int[] hashes = new int[size()];
+        long[] offsets = new long[size()];
+        int[] lengths = new int[size()];
+        int count = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            if (!isEmpty(slot)) {
+                hashes[count] = hash(slot);
+                offsets[count] = offset(slot);
+                lengths[count] = length(slot);
+                count++;
+            }
+        }
+
+        long logPosition = getLogPosition();
+        capacity = oldCapacity * 2;
+        channel.truncate(0);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, slotPosition(capacity));
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putInt(H_CAPACITY, capacity);
+        buffer.putInt(H_COUNT, 0);
+        buffer.putInt(H_CLEAN, 0);
+        buffer.putLong(H_LOG_POSITION, logPosition);
+
+        for (int i = 0; i < count; i++) {
+            int slot = home(hashes[i]);
+            while (!isEmpty(slot)) {
+                slot = next(slot);
+            }
+            insert(slot, hashes[i], offsets[i], lengths[i]);
+        }
+    }
+
+    // The log marks the index clean first if no other process still has it open
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,338 @@
+package util.storage;
+
+import model.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only store of user accounts, keyed by email.
+ * Registering a user or changing their design ids appends one record holding just that user,
+ * instead of rewriting every account. A memory-mapped UserIndex next to the log maps each
+ * email hash to the user's latest record, so a login reads a single record.
+ *
+ * Records use the same checksummed framing as the design log, with the email hash in the id
+ * field. A torn record at the tail is cut off on open; after an unclean shutdown the index is
+ * rebuilt from the whole log, which is small since user records are a few dozen bytes.
+ *
+ * Like DesignLog, the log can be shared by several application instances: reads hold a shared
+ * and writes an exclusive lock on users.log.lock, and the index mapping is shared between them.
+ * putIfAbsent and update check and change a user under one lock, so two instances registering
+ * the same email, or adding designs to the same account, cannot overwrite each other.
+ */
+public class UserLog implements UserStore {
+    private static final int MAGIC = 0x52445553; // "RDUS"
+
+    private final File file;
+    private final FileChannel channel;
+    private final UserIndex index;
+
+    // Coordinates the processes sharing this log
+    private final ProcessLock processLock;
+
+    private UserLog(File file, FileChannel channel, UserIndex index, ProcessLock processLock) {
+        this.file = file;
+        this.channel = channel;
+        this.index = index;
+        this.processLock = processLock;
+    }
+
+    public static UserLog open(File file) throws IOException {
+        ProcessLock processLock = ProcessLock.open(new File(file.getParentFile(), file.getName() + ".lock"));
+        try {
+            FileLock lock = processLock.exclusive();
+            try {
+                FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (channel.size() == 0) {
+                    RecordFormat.writeFileHeader(channel, MAGIC);
+                    channel.force(true);
+                } else if (RecordFormat.readFileVersion(channel, MAGIC) != RecordFormat.VERSION) {
+                    channel.close();
+                    throw new IOException("Unsupported user log format: " + file);
+                }
+
+                UserIndex index = UserIndex.open(new File(file.getParentFile(), file.getName() + ".idx"));
+                UserLog log = new UserLog(file, channel, index, processLock);
+                if (processLock.isOnlyProcess()) {
+                    log.recover();
+                } else {
+                    // The processes already running keep the index current
+                    log.repairTail();
+                }
+                processLock.join();
+                return log;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            processLock.close();
+            throw e;
+        }
+    }
+
+    // Bring the index up to date with the log
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+
+        long start;
+        if (index.isConsistentWith(channel.size())) {
+            start = index.getLogPosition();
+        } else {
+            index.reset();
+            start = RecordFormat.FILE_HEADER_SIZE;
+        }
+
+        int replayed = replay(start);
+        index.setClean(false);
+
+        System.out.printf("[UserLog] Replayed %d records (%d bytes) in %.1f ms%n",
+                replayed, index.getLogPosition() - start, (System.nanoTime() - started) / 1e6);
+    }
+
+    // Apply complete records from the given position on and cut off a torn record at the end;
+    // a damaged record with more after it fails the replay rather than losing what follows
+    private int replay(long start) throws IOException {
+        long size = channel.size();
+        int replayed = 0;
+        long position = start;
+        RecordFormat.Record record;
+        while ((record = RecordFormat.read(channel, position, size)) != null) {
+            if (record.type == RecordFormat.PUT) {
+                index(decode(record.payload).getEmail(), record.payloadOffset(), record.payload.length);
+            }
+            position = record.end();
+            replayed++;
+        }
+
+        RecordFormat.truncateTornTail(channel, position, file.getName());
+        index.setLogPosition(position);
+        return replayed;
+    }
+
+    @Override
+    public synchronized User read(String email) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return readLocked(email);
+        } finally {
+            lock.release();
+        }
+    }
+
+    public synchronized boolean contains(String email) throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return findSlot(email) >= 0;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Add a user or replace their stored record
+    public synchronized void put(User user) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            append(user);
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized boolean putIfAbsent(User user) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            if (findSlot(user.getEmail()) >= 0) {
+                return false;
+            }
+            append(user);
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // No other process writes between reading the user and storing the changed one
+    @Override
+    public synchronized User update(String email, Consumer<User> change) throws IOException {
+        FileLock lock = lockExclusive();
+        try {
+            User user = readLocked(email);
+            if (user == null) {
+                return null;
+            }
+            change.accept(user);
+            append(user);
+            return user;
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, User> readAll() throws IOException {
+        FileLock lock = lockShared();
+        try {
+            Map<String, User> users = new LinkedHashMap<>();
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                if (!index.isEmpty(slot)) {
+                    User user = decode(readPayload(index.offset(slot), index.length(slot)));
+                    users.put(user.getEmail(), user);
+                }
+            }
+            return users;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Takes the read lock, since another process may be rebuilding the index while it grows
+    @Override
+    public synchronized int size() throws IOException {
+        FileLock lock = lockShared();
+        try {
+            return index.size();
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            FileLock lock = processLock.exclusive();
+            try {
+                // Only the last process to close the log marks the index clean
+                processLock.leave();
+                if (processLock.isOnlyProcess()) {
+                    index.setClean(true);
+                }
+                index.close();
+                channel.close();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.close();
+        }
+    }
+
+    private User readLocked(String email) throws IOException {
+        int slot = findSlot(email);
+        return slot >= 0 ? decode(readPayload(index.offset(slot), index.length(slot))) : null;
+    }
+
+    // Append the user's record and make it durable before the index points at it
+    private void append(User user) throws IOException {
+        byte[] payload = encode(user);
+        long offset = channel.size();
+        RecordFormat.writeFully(channel, RecordFormat.frame(RecordFormat.PUT, hash(user.getEmail()), payload), offset);
+        channel.force(false);
+
+        index(user.getEmail(), offset + RecordFormat.HEADER_SIZE, payload.length);
+        index.setLogPosition(offset + RecordFormat.HEADER_SIZE + payload.length);
+    }
+
+    // Take the shared lock and pick up an index that another process grew
+    private FileLock lockShared() throws IOException {
+        FileLock lock = processLock.shared();
+        try {
+            index.refresh();
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    private FileLock lockExclusive() throws IOException {
+        FileLock lock = processLock.exclusive();
+        try {
+            index.refresh();
+            repairTail();
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    // A writer that died between appending and updating the index leaves records past the log position
+    private void repairTail() throws IOException {
+        if (channel.size() != index.getLogPosition()) {
+            replay(index.getLogPosition());
+        }
+    }
+
+    private void index(String email, long offset, int length) throws IOException {
+        index.ensureRoomForOne();
+        int slot = findSlot(email);
+        if (slot >= 0) {
+            index.update(slot, offset, length);
+        } else {
+            index.insert(-slot - 1, hash(email), offset, length);
+        }
+    }
+
+    // Slot holding this email, or -(empty slot + 1) where it would be inserted
+    private int findSlot(String email) throws IOException {
+        int hash = hash(email);
+        int slot = index.home(hash);
+        while (!index.isEmpty(slot)) {
+            if (index.hash(slot) == hash && email.equals(readEmail(index.offset(slot)))) {
+                return slot;
+            }
+            slot = index.next(slot);
+        }
+        return -slot - 1;
+    }
+
+    // The email is the first field of a record, so only its start is read
+    private String readEmail(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(2);
+        RecordFormat.readFully(channel, length, offset);
+        int emailLength = length.getShort(0) & 0xFFFF;
+        return new DataInputStream(new ByteArrayInputStream(readPayload(offset, 2 + emailLength))).readUTF();
+    }
+
+    private byte[] readPayload(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        RecordFormat.readFully(channel, buffer, offset);
+        return buffer.array();
+    }
+
+    private static int hash(String email) {
+        return email.hashCode();
+    }
+
+    // email, password, design id count, design ids
+    private static byte[] encode(User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + user.getDesignIds().size() * 4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(user.getEmail());
+            out.writeUTF(user.getPassword());
+            out.writeInt(user.getDesignIds().size());
+            for (int designId : user.getDesignIds()) {
+                out.writeInt(designId);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static User decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        User user = new User(in.readUTF(), in.readUTF());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            user.addDesignId(in.readInt());
+        }
+        return user;
+    }
+}
@@ -0,0 +1,27 @@
+package util.storage;
+
+import model.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Where user accounts are kept.
+ * FileManager talks to one of these; the storage backend decides what it is.
+ */
+public interface UserStore extends Closeable {
+    // The user with this email, or null if there is none
+    User read(String email) throws IOException;
+
+    // Add a user unless the email is already taken; returns false if it is
+    boolean putIfAbsent(User user) throws IOException;
+
+    // Change the stored user atomically; returns the updated user, or null if there is none
+    User update(String email, Consumer<User> change) throws IOException;
+
+    Map<String, User> readAll() throws IOException;
+
+    int size() throws IOException;
+}
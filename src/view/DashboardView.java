@@ -4,6 +4,7 @@ import controller.AuthController;
 import controller.DashboardController;
 import controller.ViewManager;
 import model.Design;
+import model.DesignSummary;
 import model.User;
 import util.AppContext;
 
@@ -14,7 +15,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
 import java.text.SimpleDateFormat;
-import java.util.Date;
 
 public class DashboardView extends JPanel {
     private AppContext appContext;
@@ -126,7 +126,7 @@ public class DashboardView extends JPanel {
         loadDesignCard.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
                 // Get all user designs
-                List<Design> userDesigns = appContext.getDashboardController().getUserDesigns();
+                List<DesignSummary> userDesigns = appContext.getDashboardController().getUserDesignSummaries();
 
                 if (userDesigns.isEmpty()) {
                     JOptionPane.showMessageDialog(parentFrame,
@@ -161,12 +161,8 @@ public class DashboardView extends JPanel {
                     }
 
                     if (index >= 0) {
-                        Design design = userDesigns.get(index);
                         // Load the selected design
-                        parentFrame.getContentPane().removeAll();
-                        parentFrame.setContentPane(new Design2DView(appContext, parentFrame, design.getRoom(), design));
-                        parentFrame.revalidate();
-                        parentFrame.repaint();
+                        openDesign(userDesigns.get(index).getId());
                     }
                 }
             }
@@ -214,8 +210,8 @@ public class DashboardView extends JPanel {
     }
 
     private void displayDesignCards(JPanel backgroundPanel) {
-        // Get user designs
-        List<Design> userDesigns = appContext.getDashboardController().getUserDesigns();
+        // Get user designs; only the summaries are needed for the cards
+        List<DesignSummary> userDesigns = appContext.getDashboardController().getUserDesignSummaries();
 
         // No saved designs message
         JLabel noDesignsLabel = new JLabel("No saved designs. Create a new design to get started.");
@@ -247,7 +243,7 @@ public class DashboardView extends JPanel {
         int displayCount = Math.min(userDesigns.size(), 4);
 
         for (int i = 0; i < displayCount; i++) {
-            Design design = userDesigns.get(i);
+            DesignSummary design = userDesigns.get(i);
 
             // Calculate position in grid
             int row = i / cardsPerRow;
@@ -265,7 +261,7 @@ public class DashboardView extends JPanel {
         }
     }
 
-    private JPanel createDesignCard(Design design, SimpleDateFormat dateFormat) {
+    private JPanel createDesignCard(DesignSummary design, SimpleDateFormat dateFormat) {
         JPanel card = new JPanel();
         card.setLayout(null);
         card.setBackground(Color.WHITE);
@@ -305,7 +301,7 @@ public class DashboardView extends JPanel {
         JLabel roomInfoLabel = new JLabel("<html>Room: " + design.getRoom().getWidth() + "m x " +
                 design.getRoom().getLength() + "m x " +
                 design.getRoom().getHeight() + "m<br>" +
-                "Created: " + dateFormat.format(new Date()) + "</html>");
+                "Created: " + dateFormat.format(design.getCreationDate()) + "</html>");
         roomInfoLabel.setFont(new Font("Arial", Font.PLAIN, 12));
         roomInfoLabel.setBounds(40, 50, 150, 50);
         card.add(roomInfoLabel);
@@ -323,10 +319,7 @@ public class DashboardView extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // Open design in editor
-                parentFrame.getContentPane().removeAll();
-                parentFrame.setContentPane(new Design2DView(appContext, parentFrame, design.getRoom(), design));
-                parentFrame.revalidate();
-                parentFrame.repaint();
+                openDesign(design.getId());
             }
         });
         card.add(editButton);
@@ -384,6 +377,23 @@ public class DashboardView extends JPanel {
         return card;
     }
 
+    // Load the full design, furniture included, and open it in the editor
+    private void openDesign(int designId) {
+        Design design = appContext.getDashboardController().loadDesign(designId);
+        if (design == null) {
+            JOptionPane.showMessageDialog(parentFrame,
+                    "This design could not be loaded.",
+                    "Load Design",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        parentFrame.getContentPane().removeAll();
+        parentFrame.setContentPane(new Design2DView(appContext, parentFrame, design.getRoom(), design));
+        parentFrame.revalidate();
+        parentFrame.repaint();
+    }
+
     // Inner class for rounded borders
     private class RoundedBorder extends AbstractBorder {
         private int radius;
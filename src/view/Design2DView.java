@@ -2,15 +2,28 @@ package view;
 
 import controller.Design2DController;
 import model.Design;
+import model.DesignRevision;
 import model.Furniture;
 import model.Room;
 import util.AppContext;
+import util.Constants;
+import util.storage.DesignConflictException;
+import util.geometry.Footprint;
+import util.geometry.Snap;
+import view.components.DragPacer;
+import view.components.LabelCache;
+import view.components.RoomLayers;
+import view.components.Viewport;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Design2DView extends JPanel {
@@ -28,14 +41,54 @@ public class Design2DView extends JPanel {
 
     private Furniture selectedFurniture;
     private Furniture draggingFurniture;
-    private Point dragStartPoint;
+    private Point2D.Double dragGrabOffset; // Where on the dragged furniture it was picked up, in canvas units
+    private Point panStartPoint;
+    private boolean dragOverlapping; // Whether the dragged furniture overlapped other furniture at its last step
     private Color selectedColor = Color.YELLOW; // Default color changed to yellow to match your screenshot
 
+    private static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+
+    // Furniture labels laid out once per type and zoom level
+    private final LabelCache labelCache = new LabelCache(LABEL_FONT, 64);
+
+    // Zoom change per notch of the mouse wheel, and space kept around the room when it is fitted to the panel
+    private static final double ZOOM_STEP = 1.15;
+    private static final int FIT_MARGIN = 20;
+
+    // Grid sizes offered for snapping, in centimetres, and how close in screen pixels an edge snaps to a line
+    private static final int[] GRID_SIZES_CM = {5, 10, 25, 50, 100};
+    private static final int DEFAULT_GRID_SIZE_INDEX = 1;
+    private static final int SNAP_DISTANCE = 8;
+    private static final Color GUIDE_COLOR = new Color(230, 0, 160);
+
+    private boolean snapEnabled = true;
+    private int gridSize = GRID_SIZES_CM[DEFAULT_GRID_SIZE_INDEX] * Constants.PIXELS_PER_METER / 100;
+
+    // Wall or furniture lines the dragged piece is snapped to, in canvas units; NaN when there is none
+    private double guideX = Double.NaN;
+    private double guideY = Double.NaN;
+
+    // Zoom and pan of the room panel; fitted to the room once the panel has a size
+    private final Viewport viewport = new Viewport();
+    private boolean viewportFitted;
+
+    // Cached floor and furniture images behind the room panel, drawing only what is in view
+    private final RoomLayers roomLayers = new RoomLayers(
+            (g2d, furniture, detailed) -> drawFurniture(g2d, furniture, Constants.PIXELS_PER_METER, detailed),
+            area -> appContext.getDesign2DController().findFurnitureIn(area));
+
+    // Applies drag movement once per display frame rather than once per mouse event
+    private final DragPacer dragPacer = new DragPacer(this::dragFurnitureTo);
+
     // For undo/redo functionality
     private List<List<Furniture>> undoHistory = new ArrayList<>();
     private List<List<Furniture>> redoHistory = new ArrayList<>();
     private int currentHistoryIndex = -1;
 
+    // Room size shown in the header and the left panel; a restored revision may change it
+    private JLabel roomInfoLabel;
+    private JLabel roomDimensionsLabel;
+
     // Add to the Design2DView constructor to debug furniture loading
     public Design2DView(AppContext appContext, JFrame parentFrame, Room room, Design existingDesign) {
         this.appContext = appContext;
@@ -103,15 +156,9 @@ public class Design2DView extends JPanel {
         JPanel leftPanel = createFurnitureSelectionPanel();
         mainPanel.add(leftPanel, BorderLayout.WEST);
 
-        // Center panel for room visualization - wrapped in a container to center it
+        // Center panel for room visualization - fills the space, zoomed and panned by its viewport
         roomPanel = createRoomPanel();
-        JPanel centeringPanel = new JPanel(new GridBagLayout());
-        centeringPanel.setBackground(Color.LIGHT_GRAY);
-        centeringPanel.add(roomPanel); // This will center the roomPanel in the available space
-
-        JScrollPane scrollPane = new JScrollPane(centeringPanel);
-        scrollPane.setBorder(BorderFactory.createEmptyBorder());
-        mainPanel.add(scrollPane, BorderLayout.CENTER);
+        mainPanel.add(roomPanel, BorderLayout.CENTER);
 
         add(mainPanel);
     }
@@ -126,7 +173,9 @@ public class Design2DView extends JPanel {
             appContext.getDesign2DController().setCurrentDesign(design);
 
             // Repaint
+            roomLayers.invalidateFurniture();
             if (roomPanel != null) {
+                fitRoomToPanel();
                 roomPanel.repaint();
             }
         }
@@ -183,8 +232,17 @@ public class Design2DView extends JPanel {
             }
         });
 
+        // Revision history button
+        JButton historyButton = new JButton("History");
+        historyButton.setBackground(Color.BLACK);
+        historyButton.setForeground(Color.WHITE);
+        historyButton.setFocusPainted(false);
+        historyButton.setBorderPainted(false);
+        historyButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        historyButton.addActionListener(e -> showRevisionHistory());
+
         // Room info label
-        JLabel roomInfoLabel = new JLabel("Room Size: " + room.getWidth() + "m x " +
+        roomInfoLabel = new JLabel("Room Size: " + room.getWidth() + "m x " +
                 room.getLength() + "m x " +
                 room.getHeight() + "m");
         roomInfoLabel.setFont(new Font("Arial", Font.PLAIN, 14));
@@ -198,6 +256,7 @@ public class Design2DView extends JPanel {
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         rightPanel.setOpaque(false);
         rightPanel.add(roomInfoLabel);
+        rightPanel.add(historyButton);
         rightPanel.add(view3DButton);
 
         headerPanel.add(leftPanel, BorderLayout.WEST);
@@ -253,6 +312,7 @@ public class Design2DView extends JPanel {
                     if (selectedFurniture != null) {
                         selectedFurniture.setColor(newColor); // Update the selected furniture's color
                         appContext.getDesign2DController().changeFurnitureColor(selectedFurniture, newColor);
+                        roomLayers.invalidateFurniture();
                         roomPanel.repaint();
                         saveHistory();
                     }
@@ -283,13 +343,13 @@ public class Design2DView extends JPanel {
             public void actionPerformed(ActionEvent e) {
                 if (selectedFurniture != null) {
                     // Place furniture in center of the room
-                    int roomWidth = roomPanel.getWidth();
-                    int roomHeight = roomPanel.getHeight();
+                    int pixelsPerMeter = Constants.PIXELS_PER_METER;
+                    int roomWidth = (int) (room.getWidth() * pixelsPerMeter);
+                    int roomHeight = (int) (room.getLength() * pixelsPerMeter);
 
                     Point center = new Point(roomWidth / 2, roomHeight / 2);
 
                     // Adjust to center the furniture
-                    int pixelsPerMeter = 100; // Use consistent scaling
                     int furnitureWidth = (int) (selectedFurniture.getWidth() * pixelsPerMeter);
                     int furnitureLength = (int) (selectedFurniture.getLength() * pixelsPerMeter);
                     center.x -= furnitureWidth / 2;
@@ -300,6 +360,7 @@ public class Design2DView extends JPanel {
                     newFurniture.setColor(selectedColor);
 
                     appContext.getDesign2DController().addFurniture(newFurniture, center);
+                    roomLayers.invalidateFurniture();
                     roomPanel.repaint();
                     saveHistory();
                 }
@@ -336,17 +397,46 @@ public class Design2DView extends JPanel {
                         return;
                     }
 
+                    // Overlapping furniture is allowed, but worth a second look before saving
+                    int overlaps = appContext.getDesign2DController().findOverlaps(currentDesign).size();
+                    if (overlaps > 0 && JOptionPane.showConfirmDialog(this,
+                            overlaps + (overlaps == 1 ? " pair" : " pairs") + " of furniture overlap.\n" +
+                                    "Save the design anyway?",
+                            "Overlapping Furniture",
+                            JOptionPane.YES_NO_OPTION,
+                            JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+                        return;
+                    }
+
                     // Update the design name
                     currentDesign.setName(newName);
 
-                    // Save the design
-                    appContext.getDesign2DController().saveDesign();
-
-                    // Show success message
-                    JOptionPane.showMessageDialog(this,
-                            "Design \"" + newName + "\" saved successfully!",
-                            "Save Successful",
-                            JOptionPane.INFORMATION_MESSAGE);
+                    // Save the design in the background and report once it is on disk
+                    appContext.getDesign2DController().saveDesign().whenComplete((saved, error) ->
+                            SwingUtilities.invokeLater(() -> {
+                                if (error instanceof DesignConflictException
+                                        || error != null && error.getCause() instanceof DesignConflictException) {
+                                    JOptionPane.showMessageDialog(this,
+                                            "This design was changed in another window since you opened it.\n" +
+                                                    "Reopen it from the dashboard to see the latest version.",
+                                            "Save Conflict",
+                                            JOptionPane.WARNING_MESSAGE);
+                                    return;
+                                }
+                                if (error != null) {
+                                    JOptionPane.showMessageDialog(this,
+                                            "Error saving design: " + error.getMessage(),
+                                            "Save Error",
+                                            JOptionPane.ERROR_MESSAGE);
+                                    return;
+                                }
+
+                                // Show success message
+                                JOptionPane.showMessageDialog(this,
+                                        "Design \"" + newName + "\" saved successfully!",
+                                        "Save Successful",
+                                        JOptionPane.INFORMATION_MESSAGE);
+                            }));
 
                     roomPanel.repaint();
                 } else {
@@ -368,12 +458,14 @@ public class Design2DView extends JPanel {
         JButton undoButton = createIconButton("undo.png", "Undo");
         undoButton.addActionListener(e -> {
             undo();
+            roomLayers.invalidateFurniture();
             roomPanel.repaint();
         });
 
         JButton redoButton = createIconButton("reset.png", "Redo");
         redoButton.addActionListener(e -> {
             redo();
+            roomLayers.invalidateFurniture();
             roomPanel.repaint();
         });
 
@@ -381,12 +473,37 @@ public class Design2DView extends JPanel {
         controlButtonsPanel.add(undoButton);
         controlButtonsPanel.add(redoButton);
 
+        // Snapping of dragged furniture to the grid, the walls and other furniture
+        JCheckBox snapCheckBox = new JCheckBox("Snap", snapEnabled);
+        snapCheckBox.setOpaque(false);
+        snapCheckBox.setFocusPainted(false);
+        String[] gridSizeNames = new String[GRID_SIZES_CM.length];
+        for (int i = 0; i < GRID_SIZES_CM.length; i++) {
+            gridSizeNames[i] = GRID_SIZES_CM[i] + " cm";
+        }
+        JComboBox<String> gridSizeComboBox = new JComboBox<>(gridSizeNames);
+        gridSizeComboBox.setSelectedIndex(DEFAULT_GRID_SIZE_INDEX);
+        gridSizeComboBox.setToolTipText("Grid size");
+        snapCheckBox.addActionListener(e -> {
+            snapEnabled = snapCheckBox.isSelected();
+            gridSizeComboBox.setEnabled(snapEnabled);
+        });
+        gridSizeComboBox.addActionListener(e ->
+                gridSize = GRID_SIZES_CM[gridSizeComboBox.getSelectedIndex()] * Constants.PIXELS_PER_METER / 100);
+
+        JPanel snapPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 0));
+        snapPanel.setOpaque(false);
+        snapPanel.setMaximumSize(new Dimension(180, 30));
+        snapPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        snapPanel.add(snapCheckBox);
+        snapPanel.add(gridSizeComboBox);
+
         // Room information at bottom
         JLabel roomSizeLabel = new JLabel("Room Size:");
         roomSizeLabel.setFont(new Font("Arial", Font.BOLD, 12));
         roomSizeLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 
-        JLabel roomDimensionsLabel = new JLabel(room.getWidth() + "m x " +
+        roomDimensionsLabel = new JLabel(room.getWidth() + "m x " +
                 room.getLength() + "m x " +
                 room.getHeight() + "m");
         roomDimensionsLabel.setFont(new Font("Arial", Font.PLAIN, 12));
@@ -406,6 +523,8 @@ public class Design2DView extends JPanel {
         leftPanel.add(addButton);
         leftPanel.add(Box.createVerticalStrut(20));
         leftPanel.add(controlButtonsPanel);
+        leftPanel.add(Box.createVerticalStrut(10));
+        leftPanel.add(snapPanel);
         leftPanel.add(Box.createVerticalGlue());
         leftPanel.add(roomSizeLabel);
         leftPanel.add(roomDimensionsLabel);
@@ -496,64 +615,57 @@ public class Design2DView extends JPanel {
                 g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                         RenderingHints.VALUE_ANTIALIAS_ON);
 
-                // Calculate the room dimensions in pixels
-                // Maintain aspect ratio of the room
-                double roomWidthMeters = room.getWidth();
-                double roomLengthMeters = room.getLength();
-
-                int pixelsPerMeter = 100; // Fixed scale: 1 meter = 100 pixels
-                int roomWidthPixels = (int)(roomWidthMeters * pixelsPerMeter);
-                int roomLengthPixels = (int)(roomLengthMeters * pixelsPerMeter);
-
-                // Draw room background (floor)
-                g2d.setColor(room.getFloorColor());
-                g2d.fillRect(0, 0, roomWidthPixels, roomLengthPixels);
-
-                // Draw room walls
-                g2d.setColor(room.getWallColor());
-                g2d.setStroke(new BasicStroke(2));
-                g2d.drawRect(0, 0, roomWidthPixels - 1, roomLengthPixels - 1);
-
                 // Draw furniture - make sure we're getting the latest design from the controller
                 Design currentDesign = appContext.getDesign2DController().getCurrentDesign();
+                List<Furniture> furnitureList = currentDesign != null ? currentDesign.getFurnitureList() : null;
 
-                if (currentDesign != null && currentDesign.getFurnitureList() != null) {
-                    System.out.println("Drawing " + currentDesign.getFurnitureList().size() + " furniture items");
-
-                    // Important: Create a temporary list to avoid concurrent modification
-                    List<Furniture> furnitureToDraw = new ArrayList<>(currentDesign.getFurnitureList());
-
-                    // Draw each furniture piece
-                    for (Furniture furniture : furnitureToDraw) {
-                        drawFurniture(g2d, furniture, pixelsPerMeter);
-                    }
-                } else {
-                    System.out.println("No furniture to draw - design or furniture list is null");
-                }
-
-                // Draw selected furniture if being dragged
+                // Floor, walls and still furniture come from cached layers; only the dragged piece is drawn live
+                roomLayers.paint(g2d, getVisibleRect(), viewport, room, furnitureList, draggingFurniture);
                 if (draggingFurniture != null) {
-                    drawFurniture(g2d, draggingFurniture, pixelsPerMeter);
+                    drawGuides(g2d);
                 }
             }
 
             @Override
             public Dimension getPreferredSize() {
-                // Set panel size based on room dimensions with consistent scale
-                int pixelsPerMeter = 100;
+                // The room at 100% zoom, up to the window size; larger rooms are fitted by zooming out
+                int pixelsPerMeter = Constants.PIXELS_PER_METER;
                 return new Dimension(
-                        (int)(room.getWidth() * pixelsPerMeter),
-                        (int)(room.getLength() * pixelsPerMeter)
+                        Math.min((int)(room.getWidth() * pixelsPerMeter), Constants.WINDOW_WIDTH),
+                        Math.min((int)(room.getLength() * pixelsPerMeter), Constants.WINDOW_HEIGHT)
                 );
             }
         };
+        panel.setBackground(Color.LIGHT_GRAY);
+
+        panel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (!viewportFitted) {
+                    fitRoomToPanel();
+                }
+            }
+        });
+
+        // The mouse wheel zooms in and out around the pointer
+        panel.addMouseWheelListener(e -> {
+            viewport.zoomAt(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            panel.repaint();
+        });
 
         // Add mouse listeners for furniture placement and manipulation
         panel.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
-                // Check if clicking on existing furniture
-                Point clickPoint = e.getPoint();
+                // The middle and right buttons drag the view around
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    panStartPoint = e.getPoint();
+                    return;
+                }
+
+                // Check if clicking on existing furniture, at the centre of the pixel under the pointer
+                Point2D.Double clickPoint = new Point2D.Double(
+                        viewport.toCanvasX(e.getX() + 0.5), viewport.toCanvasY(e.getY() + 0.5));
                 Furniture clickedFurniture = getFurnitureAtPoint(clickPoint);
 
                 if (clickedFurniture != null) {
@@ -562,22 +674,26 @@ public class Design2DView extends JPanel {
 
                     // Start dragging
                     draggingFurniture = clickedFurniture;
-                    dragStartPoint = clickPoint;
+                    dragGrabOffset = new Point2D.Double(clickPoint.x - clickedFurniture.getPosition().x,
+                            clickPoint.y - clickedFurniture.getPosition().y);
+                    dragOverlapping = !appContext.getDesign2DController()
+                            .findOverlapping(clickedFurniture, clickedFurniture.getPosition()).isEmpty();
                 } else if (selectedFurniture != null && addButton.isEnabled()) {
                     // Add new furniture at click position
                     Furniture newFurniture = selectedFurniture.clone();
                     newFurniture.setColor(selectedColor); // Ensure correct color is set
 
                     // Adjust position to center furniture at click point
-                    int pixelsPerMeter = 100;
+                    int pixelsPerMeter = Constants.PIXELS_PER_METER;
                     int furnitureWidth = (int) (newFurniture.getWidth() * pixelsPerMeter);
                     int furnitureLength = (int) (newFurniture.getLength() * pixelsPerMeter);
 
                     Point adjustedPoint = new Point(
-                            clickPoint.x - furnitureWidth / 2,
-                            clickPoint.y - furnitureLength / 2);
+                            (int) clickPoint.x - furnitureWidth / 2,
+                            (int) clickPoint.y - furnitureLength / 2);
 
                     appContext.getDesign2DController().addFurniture(newFurniture, adjustedPoint);
+                    roomLayers.invalidateFurniture();
                     panel.repaint();
                     saveHistory();
                 }
@@ -585,10 +701,18 @@ public class Design2DView extends JPanel {
 
             @Override
             public void mouseReleased(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    panStartPoint = null;
+                    return;
+                }
                 if (draggingFurniture != null) {
-                    // End dragging
+                    // End dragging, after moving to where the button was released
+                    dragPacer.finish();
                     draggingFurniture = null;
-                    dragStartPoint = null;
+                    dragGrabOffset = null;
+                    dragOverlapping = false;
+                    guideX = Double.NaN;
+                    guideY = Double.NaN;
                     panel.repaint();
                     saveHistory();
                 }
@@ -598,28 +722,12 @@ public class Design2DView extends JPanel {
         panel.addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (draggingFurniture != null && dragStartPoint != null) {
-                    // Calculate new position
-                    Point newPoint = new Point(
-                            draggingFurniture.getPosition().x + (e.getX() - dragStartPoint.x),
-                            draggingFurniture.getPosition().y + (e.getY() - dragStartPoint.y));
-
-                    // Keep furniture within room boundaries
-                    int pixelsPerMeter = 100;
-                    int roomWidth = (int)(room.getWidth() * pixelsPerMeter);
-                    int roomHeight = (int)(room.getLength() * pixelsPerMeter);
-                    int furnitureWidth = (int)(draggingFurniture.getWidth() * pixelsPerMeter);
-                    int furnitureHeight = (int)(draggingFurniture.getLength() * pixelsPerMeter);
-
-                    newPoint.x = Math.max(0, Math.min(newPoint.x, roomWidth - furnitureWidth));
-                    newPoint.y = Math.max(0, Math.min(newPoint.y, roomHeight - furnitureHeight));
-
-                    // Update furniture position
-                    appContext.getDesign2DController().moveFurniture(draggingFurniture, newPoint);
-
-                    // Update drag start point
-                    dragStartPoint = e.getPoint();
+                if (panStartPoint != null) {
+                    viewport.panBy(e.getX() - panStartPoint.x, e.getY() - panStartPoint.y);
+                    panStartPoint = e.getPoint();
                     panel.repaint();
+                } else if (draggingFurniture != null && dragGrabOffset != null) {
+                    dragPacer.offer(e.getX(), e.getY());
                 }
             }
         });
@@ -627,14 +735,133 @@ public class Design2DView extends JPanel {
         return panel;
     }
 
-    // Update the drawFurniture method in Design2DView to ensure proper rendering
-    private void drawFurniture(Graphics2D g2d, Furniture furniture, int pixelsPerMeter) {
-        // Log furniture details for debugging
-        System.out.println("Drawing furniture: " + furniture.getType()
-                + " at position (" + furniture.getPosition().x
-                + "," + furniture.getPosition().y
-                + ") with color " + furniture.getColor());
+    // Show the whole room, centred, at 100% zoom or zoomed out as far as it takes to fit
+    private void fitRoomToPanel() {
+        if (roomPanel == null || roomPanel.getWidth() <= 0 || roomPanel.getHeight() <= 0) {
+            return;
+        }
+        viewport.fit(room.getWidth() * Constants.PIXELS_PER_METER, room.getLength() * Constants.PIXELS_PER_METER,
+                roomPanel.getWidth(), roomPanel.getHeight(), FIT_MARGIN, 1.0);
+        viewportFitted = true;
+        roomPanel.repaint();
+    }
+
+    // Move the dragged furniture so the point it was picked up by follows the pointer
+    private void dragFurnitureTo(int x, int y) {
+        if (draggingFurniture == null || dragGrabOffset == null) {
+            return;
+        }
+        // Calculate new position
+        Point newPoint = new Point(
+                (int) Math.round(viewport.toCanvasX(x + 0.5) - dragGrabOffset.x),
+                (int) Math.round(viewport.toCanvasY(y + 0.5) - dragGrabOffset.y));
+
+        // Line up with the walls or nearby furniture when close to them, and with the grid otherwise
+        Snap snap = null;
+        if (snapEnabled) {
+            snap = appContext.getDesign2DController().snapFurniture(draggingFurniture, newPoint,
+                    SNAP_DISTANCE / viewport.getZoom(), gridSize);
+            newPoint.translate((int) Math.round(snap.getOffsetX()), (int) Math.round(snap.getOffsetY()));
+        }
+        Point snappedPoint = new Point(newPoint);
+
+        // Keep furniture within room boundaries
+        int pixelsPerMeter = Constants.PIXELS_PER_METER;
+        int roomWidth = (int)(room.getWidth() * pixelsPerMeter);
+        int roomHeight = (int)(room.getLength() * pixelsPerMeter);
+        int furnitureWidth = (int)(draggingFurniture.getWidth() * pixelsPerMeter);
+        int furnitureHeight = (int)(draggingFurniture.getLength() * pixelsPerMeter);
+
+        newPoint.x = Math.max(0, Math.min(newPoint.x, roomWidth - furnitureWidth));
+        newPoint.y = Math.max(0, Math.min(newPoint.y, roomHeight - furnitureHeight));
+
+        newPoint = getFreePosition(draggingFurniture, newPoint);
+
+        // Guides only show a snap that the walls and other furniture did not undo
+        double newGuideX = snap != null && newPoint.x == snappedPoint.x ? snap.getGuideX() : Double.NaN;
+        double newGuideY = snap != null && newPoint.y == snappedPoint.y ? snap.getGuideY() : Double.NaN;
+        if (Double.compare(newGuideX, guideX) != 0 || Double.compare(newGuideY, guideY) != 0) {
+            repaintGuides();
+            guideX = newGuideX;
+            guideY = newGuideY;
+            repaintGuides();
+        }
+        if (newPoint.equals(draggingFurniture.getPosition())) {
+            return;
+        }
+
+        // Update furniture position, repainting only where the piece was and where it is now
+        Rectangle dirty = getPaintedBounds(draggingFurniture);
+        appContext.getDesign2DController().moveFurniture(draggingFurniture, newPoint);
+        dirty.add(getPaintedBounds(draggingFurniture));
+        dragOverlapping = !appContext.getDesign2DController().findOverlapping(draggingFurniture, newPoint).isEmpty();
+        repaintCanvas(dirty);
+    }
+
+    // Snap guides run the length or width of the room, one screen pixel wide
+    private void drawGuides(Graphics2D g2d) {
+        if (Double.isNaN(guideX) && Double.isNaN(guideY)) {
+            return;
+        }
+        double roomWidth = room.getWidth() * Constants.PIXELS_PER_METER;
+        double roomHeight = room.getLength() * Constants.PIXELS_PER_METER;
+        Graphics2D guides = (Graphics2D) g2d.create();
+        viewport.apply(guides);
+        guides.setColor(GUIDE_COLOR);
+        guides.setStroke(new BasicStroke((float) (1 / viewport.getZoom())));
+        if (!Double.isNaN(guideX)) {
+            guides.draw(new Line2D.Double(guideX, 0, guideX, roomHeight));
+        }
+        if (!Double.isNaN(guideY)) {
+            guides.draw(new Line2D.Double(0, guideY, roomWidth, guideY));
+        }
+        guides.dispose();
+    }
+
+    private void repaintGuides() {
+        int roomWidth = (int) Math.ceil(room.getWidth() * Constants.PIXELS_PER_METER);
+        int roomHeight = (int) Math.ceil(room.getLength() * Constants.PIXELS_PER_METER);
+        if (!Double.isNaN(guideX)) {
+            repaintCanvas(new Rectangle((int) Math.floor(guideX) - 1, 0, 3, roomHeight));
+        }
+        if (!Double.isNaN(guideY)) {
+            repaintCanvas(new Rectangle(0, (int) Math.floor(guideY) - 1, roomWidth, 3));
+        }
+    }
+
+    // Repaint the part of the panel showing an area of the canvas
+    private void repaintCanvas(Rectangle canvasArea) {
+        Rectangle dirtyOnScreen = viewport.toScreen(canvasArea);
+        dirtyOnScreen.grow(1, 1);
+        roomPanel.repaint(dirtyOnScreen);
+    }
+
+    /**
+     * Where the piece can go on its way to the target without overlapping other furniture: the
+     * target itself, or failing that the target along one axis only, so the piece slides along
+     * what it runs into; otherwise it stays put. A piece that already overlaps something, as in
+     * a design saved before overlaps were blocked, moves freely until it is clear.
+     */
+    private Point getFreePosition(Furniture furniture, Point target) {
+        Design2DController controller = appContext.getDesign2DController();
+        Point current = furniture.getPosition();
+        if (dragOverlapping || controller.findOverlapping(furniture, target).isEmpty()) {
+            return target;
+        }
+        Point alongX = new Point(target.x, current.y);
+        if (controller.findOverlapping(furniture, alongX).isEmpty()) {
+            return alongX;
+        }
+        Point alongY = new Point(current.x, target.y);
+        if (controller.findOverlapping(furniture, alongY).isEmpty()) {
+            return alongY;
+        }
+        return current;
+    }
 
+    // Update the drawFurniture method in Design2DView to ensure proper rendering
+    // When zoomed out too far for detail to show, only the rotated shape is filled
+    private void drawFurniture(Graphics2D g2d, Furniture furniture, int pixelsPerMeter, boolean detailed) {
         // Save the original transform
         AffineTransform oldTransform = g2d.getTransform();
 
@@ -648,38 +875,52 @@ public class Design2DView extends JPanel {
             position = new Point(0, 0);
         }
 
-        // Create transform for rotation (around center of furniture)
-        AffineTransform transform = new AffineTransform();
-        transform.rotate(Math.toRadians(furniture.getRotation()),
+        // Looked up before rotating, so pieces at any angle share the label laid out for this zoom
+        LabelCache.Label label = detailed ? labelCache.get(g2d, getFurnitureTypeLabel(furniture.getType())) : null;
+
+        // Rotate around the center of the furniture, on top of the layer's or panel's own transform
+        g2d.rotate(Math.toRadians(furniture.getRotation()),
                 position.x + width/2,
                 position.y + height/2);
-        g2d.setTransform(transform);
 
         // Draw the furniture
         g2d.setColor(furniture.getColor());
         g2d.fillRect(position.x, position.y, width, height);
+        if (!detailed) {
+            g2d.setTransform(oldTransform);
+            return;
+        }
 
-        // Draw border
-        g2d.setColor(Color.BLACK);
+        // Draw border, red while the dragged piece overlaps other furniture
+        g2d.setColor(furniture == draggingFurniture && dragOverlapping ? Color.RED : Color.BLACK);
         g2d.drawRect(position.x, position.y, width, height);
 
-        // Draw label on furniture
+        // Draw label on furniture, centred
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 12));
-        String label = getFurnitureTypeLabel(furniture.getType());
-        FontMetrics fm = g2d.getFontMetrics();
-        int textWidth = fm.stringWidth(label);
-        int textHeight = fm.getHeight();
-
-        // Center the text on the furniture
-        int textX = position.x + (width - textWidth) / 2;
-        int textY = position.y + (height + textHeight) / 2 - 5;
-        g2d.drawString(label, textX, textY);
+        int textX = position.x + (width - label.getWidth()) / 2;
+        int textY = position.y + (height + label.getHeight()) / 2 - 5;
+        g2d.drawGlyphVector(label.getGlyphs(), textX, textY);
 
         // Restore original transform
         g2d.setTransform(oldTransform);
     }
 
+    // Canvas area drawFurniture paints: the rotated footprint, its border, and a label that may be wider than the piece
+    private Rectangle getPaintedBounds(Furniture furniture) {
+        Rectangle bounds = Footprint.of(furniture, Constants.PIXELS_PER_METER).getBounds();
+        // The label as laid out for the last paint, if one has been drawn at that zoom
+        LabelCache.Label label = labelCache.getDrawn(getFurnitureTypeLabel(furniture.getType()));
+        if (label != null) {
+            Rectangle2D labelBounds = label.getBounds();
+            int labelReach = (int) Math.ceil(Math.hypot(labelBounds.getWidth(), labelBounds.getHeight()) / 2);
+            bounds.add(new Rectangle((int) bounds.getCenterX() - labelReach, (int) bounds.getCenterY() - labelReach,
+                    2 * labelReach, 2 * labelReach));
+        }
+        // The label sits a few pixels off centre, and the border and anti-aliasing spill over the edge
+        bounds.grow(6, 6);
+        return bounds;
+    }
+
     private String getFurnitureTypeLabel(Furniture.Type type) {
         switch (type) {
             case CHAIR: return "Chair";
@@ -692,27 +933,12 @@ public class Design2DView extends JPanel {
         }
     }
 
-    private Furniture getFurnitureAtPoint(Point point) {
+    // Looked up in the controller's spatial index; where pieces overlap, the one drawn on top wins
+    private Furniture getFurnitureAtPoint(Point2D.Double point) {
         if (design == null) {
             return null;
         }
-
-        int pixelsPerMeter = 100;
-
-        for (Furniture furniture : design.getFurnitureList()) {
-            Point position = furniture.getPosition();
-            int width = (int) (furniture.getWidth() * pixelsPerMeter);
-            int height = (int) (furniture.getLength() * pixelsPerMeter);
-
-            // Using rectangle bounds for simplicity (ignoring rotation for now)
-            Rectangle bounds = new Rectangle(position.x, position.y, width, height);
-
-            if (bounds.contains(point)) {
-                return furniture;
-            }
-        }
-
-        return null;
+        return appContext.getDesign2DController().findFurnitureAt(point.x, point.y);
     }
 
     // Save current state to history for undo/redo
@@ -736,6 +962,62 @@ public class Design2DView extends JPanel {
         currentHistoryIndex = undoHistory.size() - 1;
     }
 
+    // Let the user pick an earlier saved revision and bring it back as an undoable change
+    private void showRevisionHistory() {
+        Design2DController controller = appContext.getDesign2DController();
+        List<DesignRevision> revisions = controller.getRevisions();
+        if (revisions.isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                    "This design has no saved revisions yet.",
+                    "Design History",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        // Newest first
+        String[] choices = new String[revisions.size()];
+        for (int i = 0; i < revisions.size(); i++) {
+            DesignRevision revision = revisions.get(revisions.size() - 1 - i);
+            choices[i] = "Revision " + revision.getRevision() + " - " + revision.getFormattedDate() + " - "
+                    + revision.getName() + " (" + revision.getFurnitureCount() + " items)";
+        }
+        Object choice = JOptionPane.showInputDialog(this,
+                "Restore an earlier revision of this design:",
+                "Design History",
+                JOptionPane.PLAIN_MESSAGE,
+                null,
+                choices,
+                choices[0]);
+        if (choice == null) {
+            return;
+        }
+        int index = Arrays.asList(choices).indexOf(choice);
+        DesignRevision revision = revisions.get(revisions.size() - 1 - index);
+
+        if (!controller.restoreRevision(revision.getRevision())) {
+            JOptionPane.showMessageDialog(this,
+                    "Revision " + revision.getRevision() + " could not be loaded.",
+                    "Design History",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        showRestoredRevision();
+    }
+
+    // The controller replaced the room and furniture in place; redraw from them and make the restore undoable
+    private void showRestoredRevision() {
+        room = design.getRoom();
+        String size = room.getWidth() + "m x " + room.getLength() + "m x " + room.getHeight() + "m";
+        roomInfoLabel.setText("Room Size: " + size);
+        roomDimensionsLabel.setText(size);
+
+        selectedFurniture = null;
+        roomLayers.invalidateFurniture();
+        saveHistory();
+        fitRoomToPanel();
+        roomPanel.repaint();
+    }
+
     private void undo() {
         if (currentHistoryIndex <= 0 || undoHistory.isEmpty()) return;
 
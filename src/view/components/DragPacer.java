@@ -0,0 +1,71 @@
+package view.components;
+
+import javax.swing.Timer;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+
+/**
+ * Paces a drag to the display instead of the mouse. Motion events only record the latest
+ * position; a Swing timer running at the screen's refresh rate hands that position to the drag
+ * step once per frame, so a 1000 Hz mouse costs one model update and one repaint per frame.
+ * The timer stops on a frame with no movement, so a held but still drag costs nothing.
+ */
+public class DragPacer {
+    public interface DragStep {
+        void dragTo(int x, int y);
+    }
+
+    // Used when the screen does not report its refresh rate
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    private final DragStep step;
+    private final Timer timer;
+    private int latestX;
+    private int latestY;
+    private boolean pending;
+
+    public DragPacer(DragStep step) {
+        this.step = step;
+        this.timer = new Timer(frameInterval(), e -> applyLatest());
+        // Movement after a pause is applied straight away; the frame pacing starts from there
+        timer.setInitialDelay(0);
+        timer.setCoalesce(true);
+    }
+
+    // Record where the mouse is; cheap enough for every motion event
+    public void offer(int x, int y) {
+        latestX = x;
+        latestY = y;
+        pending = true;
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    // Apply the last recorded position now and stop pacing, so a drop lands where the mouse was released
+    public void finish() {
+        timer.stop();
+        applyLatest();
+    }
+
+    private void applyLatest() {
+        if (!pending) {
+            timer.stop();
+            return;
+        }
+        pending = false;
+        step.dragTo(latestX, latestY);
+    }
+
+    private static int frameInterval() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        if (!GraphicsEnvironment.isHeadless()) {
+            refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDisplayMode().getRefreshRate();
+        }
+        if (refreshRate <= 0) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        return Math.max(1, 1000 / refreshRate);
+    }
+}
@@ -0,0 +1,121 @@
+package view.components;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Laid-out labels for the 2D room canvas, so drawing a label is one drawGlyphVector call
+ * instead of measuring and shaping the string on every paint. A label is laid out for the scale
+ * it is drawn at, which changes with the zoom and the screen, and the least recently used ones
+ * are dropped once the cache is full.
+ */
+public class LabelCache {
+    // Scales closer than this share a layout
+    private static final double SCALE_STEP = 1.0 / 64;
+
+    private final Font font;
+    private final int capacity;
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Label> labels;
+
+    // Scale of the last label asked for, i.e. the one the canvas is being drawn at
+    private long lastScaleStep;
+
+    public LabelCache(Font font, int capacity) {
+        this.font = font;
+        this.capacity = capacity;
+        this.labels = new LinkedHashMap<Key, Label>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Label> eldest) {
+                return size() > LabelCache.this.capacity;
+            }
+        };
+    }
+
+    // The text laid out for the graphics' current scale; call it before rotating the graphics
+    public Label get(Graphics2D g2d, String text) {
+        AffineTransform transform = g2d.getTransform();
+        double scale = Math.hypot(transform.getScaleX(), transform.getShearY());
+        lastScaleStep = Math.round(scale / SCALE_STEP);
+        Key key = new Key(text, lastScaleStep);
+        Label label = labels.get(key);
+        if (label == null) {
+            FontMetrics fm = g2d.getFontMetrics(font);
+            label = new Label(font.createGlyphVector(g2d.getFontRenderContext(), text),
+                    fm.stringWidth(text), fm.getHeight());
+            labels.put(key, label);
+        }
+        return label;
+    }
+
+    // The text as last laid out for drawing, or null if it has not been drawn at that scale
+    public Label getDrawn(String text) {
+        return labels.get(new Key(text, lastScaleStep));
+    }
+
+    public int size() {
+        return labels.size();
+    }
+
+    public static class Label {
+        private final GlyphVector glyphs;
+        private final int width;
+        private final int height;
+        private final Rectangle2D bounds;
+
+        Label(GlyphVector glyphs, int width, int height) {
+            this.glyphs = glyphs;
+            this.width = width;
+            this.height = height;
+            this.bounds = glyphs.getLogicalBounds();
+        }
+
+        public GlyphVector getGlyphs() {
+            return glyphs;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        // Advance and line height of the glyphs, relative to the baseline origin
+        public Rectangle2D getBounds() {
+            return bounds;
+        }
+    }
+
+    private static class Key {
+        private final String text;
+        private final long scaleStep;
+
+        Key(String text, long scaleStep) {
+            this.text = text;
+            this.scaleStep = scaleStep;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return scaleStep == key.scaleStep && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + Long.hashCode(scaleStep);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package view.components;
+
+import model.Furniture;
+import model.Room;
+import util.Constants;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Draws the 2D room canvas from cached layers: the floor and walls, then every piece of furniture
+ * that is not being dragged, then the dragged piece on its own. The two lower layers are images
+ * covering the visible part of the panel, redrawn only when the room, the viewport or the still
+ * furniture changes, so a drag step costs two image copies and one piece.
+ *
+ * Only furniture the query finds in the visible area is drawn. Zoomed out below DETAIL_ZOOM,
+ * pieces are drawn as plain shapes without borders or labels.
+ *
+ * Changes to the furniture list are noticed by its identity and size; anything else, such as
+ * recolouring a piece, needs invalidateFurniture().
+ */
+public class RoomLayers {
+    public interface FurniturePainter {
+        void paint(Graphics2D g2d, Furniture furniture, boolean detailed);
+    }
+
+    // Furniture that may show in an area of the canvas, in drawing order
+    public interface FurnitureQuery {
+        List<Furniture> findIn(Rectangle2D area);
+    }
+
+    public static final double DETAIL_ZOOM = 0.6;
+
+    // Canvas units a label may reach past the edge of its piece
+    private static final int LABEL_MARGIN = 40;
+
+    private final FurniturePainter painter;
+    private final FurnitureQuery query;
+
+    private BufferedImage roomLayer;
+    private int roomGeneration;
+    private Rectangle roomArea;
+    private double roomScale;
+    private Viewport roomViewport;
+    private int roomViewportRevision;
+    private int roomWidthPixels;
+    private int roomLengthPixels;
+    private Color floorColor;
+    private Color wallColor;
+
+    private BufferedImage furnitureLayer;
+    private int layeredRoomGeneration = -1;
+    private List<Furniture> layeredList;
+    private int layeredCount;
+    private Furniture layeredMoving;
+    private int furnitureVersion;
+    private int layeredVersion = -1;
+
+    public RoomLayers(FurniturePainter painter, FurnitureQuery query) {
+        this.painter = painter;
+        this.query = query;
+    }
+
+    // Redraw the still furniture on the next paint
+    public void invalidateFurniture() {
+        furnitureVersion++;
+    }
+
+    public void paint(Graphics2D g2d, Rectangle visible, Viewport viewport, Room room, List<Furniture> furnitureList,
+                      Furniture moving) {
+        if (visible.isEmpty()) {
+            return;
+        }
+        // Layers are drawn at device resolution, so they stay sharp on scaled displays
+        double scale = g2d.getTransform().getScaleX();
+        GraphicsConfiguration configuration = g2d.getDeviceConfiguration();
+        boolean detailed = viewport.getZoom() >= DETAIL_ZOOM;
+
+        updateRoomLayer(configuration, visible, scale, viewport, room);
+        updateFurnitureLayer(configuration, furnitureList, moving, detailed);
+
+        g2d.drawImage(roomLayer, visible.x, visible.y, visible.width, visible.height, null);
+        g2d.drawImage(furnitureLayer, visible.x, visible.y, visible.width, visible.height, null);
+        if (moving != null) {
+            Graphics2D live = (Graphics2D) g2d.create();
+            viewport.apply(live);
+            painter.paint(live, moving, detailed);
+            live.dispose();
+        }
+    }
+
+    private void updateRoomLayer(GraphicsConfiguration configuration, Rectangle visible, double scale,
+                                 Viewport viewport, Room room) {
+        int widthPixels = (int) (room.getWidth() * Constants.PIXELS_PER_METER);
+        int lengthPixels = (int) (room.getLength() * Constants.PIXELS_PER_METER);
+        if (roomLayer != null && visible.equals(roomArea) && scale == roomScale
+                && viewport == roomViewport && viewport.getRevision() == roomViewportRevision
+                && widthPixels == roomWidthPixels && lengthPixels == roomLengthPixels
+                && room.getFloorColor().equals(floorColor) && room.getWallColor().equals(wallColor)) {
+            return;
+        }
+        roomArea = new Rectangle(visible);
+        roomScale = scale;
+        roomViewport = viewport;
+        roomViewportRevision = viewport.getRevision();
+        roomWidthPixels = widthPixels;
+        roomLengthPixels = lengthPixels;
+        floorColor = room.getFloorColor();
+        wallColor = room.getWallColor();
+        roomGeneration++;
+
+        roomLayer = createLayer(configuration, roomLayer);
+        Graphics2D g2d = beginLayer(roomLayer, true);
+        g2d.setColor(floorColor);
+        g2d.fillRect(0, 0, widthPixels, lengthPixels);
+        g2d.setColor(wallColor);
+        // Walls stay at least a pixel and a half wide however far out the view is zoomed
+        g2d.setStroke(new BasicStroke((float) Math.max(2, 1.5 / viewport.getZoom())));
+        g2d.drawRect(0, 0, widthPixels - 1, lengthPixels - 1);
+        g2d.dispose();
+    }
+
+    private void updateFurnitureLayer(GraphicsConfiguration configuration, List<Furniture> furnitureList,
+                                      Furniture moving, boolean detailed) {
+        int count = furnitureList != null ? furnitureList.size() : 0;
+        if (furnitureLayer != null && layeredRoomGeneration == roomGeneration && furnitureList == layeredList
+                && count == layeredCount && moving == layeredMoving && furnitureVersion == layeredVersion) {
+            return;
+        }
+        layeredRoomGeneration = roomGeneration;
+        layeredList = furnitureList;
+        layeredCount = count;
+        layeredMoving = moving;
+        layeredVersion = furnitureVersion;
+
+        furnitureLayer = createLayer(configuration, furnitureLayer);
+        if (furnitureList == null) {
+            return;
+        }
+        Rectangle2D area = roomViewport.toCanvas(roomArea);
+        area.setRect(area.getX() - LABEL_MARGIN, area.getY() - LABEL_MARGIN,
+                area.getWidth() + 2 * LABEL_MARGIN, area.getHeight() + 2 * LABEL_MARGIN);
+
+        // Anti-aliasing is only worth its cost when pieces are drawn in detail
+        Graphics2D g2d = beginLayer(furnitureLayer, detailed);
+        for (Furniture furniture : query.findIn(area)) {
+            if (furniture != moving) {
+                painter.paint(g2d, furniture, detailed);
+            }
+        }
+        g2d.dispose();
+    }
+
+    // Reuse the previous image if it has the right size, cleared to transparent
+    private BufferedImage createLayer(GraphicsConfiguration configuration, BufferedImage previous) {
+        int width = (int) Math.ceil(roomArea.width * roomScale);
+        int height = (int) Math.ceil(roomArea.height * roomScale);
+        if (previous != null && previous.getWidth() == width && previous.getHeight() == height) {
+            Graphics2D g2d = previous.createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, width, height);
+            g2d.dispose();
+            return previous;
+        }
+        return configuration != null
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    // Graphics that draw in canvas units onto the part of the panel held by the layer
+    private Graphics2D beginLayer(BufferedImage layer, boolean antialiased) {
+        Graphics2D g2d = layer.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialiased ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.scale(roomScale, roomScale);
+        g2d.translate(-roomArea.x, -roomArea.y);
+        roomViewport.apply(g2d);
+        return g2d;
+    }
+}
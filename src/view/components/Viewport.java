@@ -0,0 +1,95 @@
+package view.components;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Zoom and pan of the 2D room panel. Designs are laid out on a canvas where one meter is
+ * Constants.PIXELS_PER_METER units; the viewport shows that canvas scaled by the zoom, with the
+ * canvas point (originX, originY) at the panel's top-left corner:
+ * screen = (canvas - origin) * zoom.
+ */
+public class Viewport {
+    public static final double MIN_ZOOM = 0.02;
+    public static final double MAX_ZOOM = 8.0;
+
+    private double zoom = 1.0;
+    private double originX;
+    private double originY;
+
+    // Changes whenever the mapping does, so images drawn for one view can tell they are stale
+    private int revision;
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public double toCanvasX(double screenX) {
+        return originX + screenX / zoom;
+    }
+
+    public double toCanvasY(double screenY) {
+        return originY + screenY / zoom;
+    }
+
+    public double toScreenX(double canvasX) {
+        return (canvasX - originX) * zoom;
+    }
+
+    public double toScreenY(double canvasY) {
+        return (canvasY - originY) * zoom;
+    }
+
+    // Canvas area shown in a screen rectangle
+    public Rectangle2D toCanvas(Rectangle screen) {
+        return new Rectangle2D.Double(toCanvasX(screen.x), toCanvasY(screen.y),
+                screen.width / zoom, screen.height / zoom);
+    }
+
+    // Smallest screen rectangle covering a canvas rectangle
+    public Rectangle toScreen(Rectangle canvas) {
+        int left = (int) Math.floor(toScreenX(canvas.x));
+        int top = (int) Math.floor(toScreenY(canvas.y));
+        return new Rectangle(left, top,
+                (int) Math.ceil(toScreenX(canvas.x + canvas.width)) - left,
+                (int) Math.ceil(toScreenY(canvas.y + canvas.height)) - top);
+    }
+
+    // Make the graphics draw in canvas units
+    public void apply(Graphics2D g2d) {
+        g2d.scale(zoom, zoom);
+        g2d.translate(-originX, -originY);
+    }
+
+    // Zoom by a factor, keeping the canvas point under the given screen point where it is
+    public void zoomAt(double factor, int screenX, int screenY) {
+        double canvasX = toCanvasX(screenX);
+        double canvasY = toCanvasY(screenY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        originX = canvasX - screenX / zoom;
+        originY = canvasY - screenY / zoom;
+        revision++;
+    }
+
+    public void panBy(int screenDx, int screenDy) {
+        originX -= screenDx / zoom;
+        originY -= screenDy / zoom;
+        revision++;
+    }
+
+    // Centre a canvas area in the screen, zoomed to fit with a margin but no further in than maxZoom
+    public void fit(double canvasWidth, double canvasHeight, int screenWidth, int screenHeight, int margin,
+                    double maxZoom) {
+        double fitZoom = Math.min((screenWidth - 2.0 * margin) / canvasWidth,
+                (screenHeight - 2.0 * margin) / canvasHeight);
+        zoom = Math.max(MIN_ZOOM, Math.min(maxZoom, fitZoom));
+        originX = canvasWidth / 2 - screenWidth / 2.0 / zoom;
+        originY = canvasHeight / 2 - screenHeight / 2.0 / zoom;
+        revision++;
+    }
+}